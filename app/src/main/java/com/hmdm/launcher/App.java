@@ -21,6 +21,8 @@ package com.hmdm.launcher;
 
 import android.app.Application;
 
+import com.hmdm.launcher.helper.JsonHelper;
+import com.hmdm.launcher.server.HttpClientKeeper;
 import com.jakewharton.picasso.OkHttp3Downloader;
 import com.squareup.picasso.Picasso;
 
@@ -30,8 +32,11 @@ public class App extends Application {
     public void onCreate() {
         super.onCreate();
 
+        // Build JSON (de)serializers in advance, so the first configuration update doesn't wait for them
+        new Thread(() -> JsonHelper.warmUp()).start();
+
         Picasso.Builder builder = new Picasso.Builder(this);
-        builder.downloader(new OkHttp3Downloader(this,Integer.MAX_VALUE));
+        builder.downloader(new OkHttp3Downloader(HttpClientKeeper.getPicassoClient(this)));
         Picasso built = builder.build();
         //built.setIndicatorsEnabled(true);
         //built.setLoggingEnabled(true);
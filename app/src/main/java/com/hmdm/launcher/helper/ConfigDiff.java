@@ -0,0 +1,118 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdm.launcher.json.ServerConfig;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Changes between the configuration applied last time and the new one.
+ * ConfigUpdater uses it to skip the stages whose configuration properties are unchanged.
+ */
+public class ConfigDiff {
+
+    // ServerConfig properties checked by the update stages
+    public static final String APPLICATIONS = "applications";
+    public static final String FILES = "files";
+    public static final String ACTIONS = "actions";
+    public static final String NEW_SERVER_URL = "newServerUrl";
+    public static final String PUSH_OPTIONS = "pushOptions";
+    public static final String KEEPALIVE_TIME = "keepaliveTime";
+
+    // Null means that everything has been changed
+    private Set<String> changedProperties;
+
+    private ConfigDiff() {
+    }
+
+    // Used when there's nothing to compare with: all stages must be executed
+    public static ConfigDiff full() {
+        return new ConfigDiff();
+    }
+
+    // Used when the server reports that the configuration is not modified
+    public static ConfigDiff unchanged() {
+        ConfigDiff diff = new ConfigDiff();
+        diff.changedProperties = new HashSet<>();
+        return diff;
+    }
+
+    public static ConfigDiff compare(ServerConfig oldConfig, ServerConfig newConfig) {
+        if (oldConfig == null || newConfig == null) {
+            return full();
+        }
+        ObjectMapper mapper = JsonHelper.getObjectMapper();
+        JsonNode oldTree = mapper.valueToTree(oldConfig);
+        JsonNode newTree = mapper.valueToTree(newConfig);
+
+        ConfigDiff diff = new ConfigDiff();
+        diff.changedProperties = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        addFieldNames(names, oldTree);
+        addFieldNames(names, newTree);
+        for (String name : names) {
+            if (!nodesEqual(oldTree.get(name), newTree.get(name))) {
+                diff.changedProperties.add(name);
+            }
+        }
+        return diff;
+    }
+
+    private static void addFieldNames(Set<String> names, JsonNode tree) {
+        Iterator<String> it = tree.fieldNames();
+        while (it.hasNext()) {
+            names.add(it.next());
+        }
+    }
+
+    private static boolean nodesEqual(JsonNode a, JsonNode b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public boolean isFull() {
+        return changedProperties == null;
+    }
+
+    public boolean isUnchanged() {
+        return changedProperties != null && changedProperties.isEmpty();
+    }
+
+    // Returns true if any of the properties has been changed
+    public boolean isChanged(String... properties) {
+        if (changedProperties == null) {
+            return true;
+        }
+        for (String property : properties) {
+            if (changedProperties.contains(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> getChangedProperties() {
+        return changedProperties;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import android.content.Context;
+
+import com.hmdm.launcher.json.ServerConfig;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary snapshot of the configuration in the application files directory.
+ * The snapshot is written to a temporary file which then replaces the old one,
+ * so an interrupted write never leaves a broken configuration.
+ */
+public class ConfigStore {
+
+    private static final String FILE_NAME = "config.bin";
+    private static final String TEMP_FILE_NAME = "config.bin.tmp";
+
+    // "HMDC" followed by the format version
+    private static final int MAGIC = 0x484D4443;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private final File file;
+    private final File tempFile;
+
+    public ConfigStore(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+        tempFile = new File(context.getFilesDir(), TEMP_FILE_NAME);
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public ServerConfig load() throws IOException {
+        byte[] data = new byte[(int)file.length()];
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(file));
+        try {
+            inputStream.readFully(data);
+        } finally {
+            inputStream.close();
+        }
+        ByteBuffer header = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Not a configuration snapshot: " + file.getAbsolutePath());
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported configuration snapshot version: " + version);
+        }
+        return JsonHelper.getBinaryReader(ServerConfig.class).readValue(data, HEADER_SIZE, data.length - HEADER_SIZE);
+    }
+
+    public void save(ServerConfig config) throws IOException {
+        byte[] data = JsonHelper.getBinaryWriter(ServerConfig.class).writeValueAsBytes(config);
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            outputStream.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).array());
+            outputStream.write(data);
+            outputStream.flush();
+            // The data must be on the disk before the rename
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Failed to replace " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.hmdm.launcher.Const;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Process-wide single-flight coordinator of the configuration updates.
+ * Only one update is running at a time; requests received meanwhile are merged
+ * into one follow-up update started when the running one is finished.
+ * Every caller gets the result of the update which covers its request.
+ * All state is accessed in the main thread.
+ */
+public class ConfigUpdateCoordinator {
+
+    public static final int RESULT_SUCCESS = 0;
+    // Configuration is applied, but some stages failed, so it will be re-applied next time
+    public static final int RESULT_INCOMPLETE = 1;
+    public static final int RESULT_ERROR = 2;
+    public static final int RESULT_NETWORK_ERROR = 3;
+
+    // A flight without progress for this time is considered stalled and aborted,
+    // so it doesn't block the following updates. A flight waiting for the user is not aborted
+    private static final long STALL_TIMEOUT_MS = 10 * 60 * 1000;
+
+    public interface Callback {
+        void onConfigUpdateFinished(int result);
+    }
+
+    private static class Request {
+        ConfigUpdater updater;
+        Context context;
+        ConfigUpdater.UINotifier uiNotifier;
+        boolean abortOnError;
+        // Apply the saved configuration without querying the server
+        boolean applySaved;
+        List<Callback> callbacks = new LinkedList<>();
+    }
+
+    private static ConfigUpdateCoordinator instance;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Request running;
+    private Request queued;
+    private int lastResult = -1;
+    private final Runnable watchdog = this::checkStalled;
+    // Reported by the running updater from any thread
+    private volatile ConfigUpdater runningUpdater;
+    private volatile long lastProgress;
+    private volatile boolean waitingForUser;
+
+    public static synchronized ConfigUpdateCoordinator getInstance() {
+        if (instance == null) {
+            instance = new ConfigUpdateCoordinator();
+        }
+        return instance;
+    }
+
+    // Returns -1 if no update has been finished yet
+    public int getLastResult() {
+        return lastResult;
+    }
+
+    public boolean isRunning() {
+        return running != null;
+    }
+
+    void requestUpdate(ConfigUpdater updater, Context context, ConfigUpdater.UINotifier uiNotifier,
+                       boolean abortOnError, boolean applySaved, Callback callback) {
+        final Request request = new Request();
+        request.updater = updater;
+        request.context = context;
+        request.uiNotifier = uiNotifier;
+        request.abortOnError = abortOnError;
+        request.applySaved = applySaved;
+        if (callback != null) {
+            request.callbacks.add(callback);
+        }
+        // Pushes and workers request updates from background threads
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            enqueue(request);
+        } else {
+            handler.post(() -> enqueue(request));
+        }
+    }
+
+    private void enqueue(Request request) {
+        if (running == null) {
+            start(request);
+            return;
+        }
+        if (queued == null) {
+            Log.i(Const.LOG_TAG, "ConfigUpdateCoordinator: update is running, queueing a follow-up");
+            queued = request;
+            return;
+        }
+        Log.i(Const.LOG_TAG, "ConfigUpdateCoordinator: update is running, merging into the queued follow-up");
+        // The updater having the UI keeps showing the progress
+        if (request.uiNotifier != null || queued.uiNotifier == null) {
+            queued.updater = request.updater;
+            queued.context = request.context;
+            queued.uiNotifier = request.uiNotifier;
+        }
+        queued.abortOnError |= request.abortOnError;
+        queued.applySaved &= request.applySaved;
+        queued.callbacks.addAll(request.callbacks);
+    }
+
+    private void start(Request request) {
+        running = request;
+        runningUpdater = request.updater;
+        lastProgress = SystemClock.elapsedRealtime();
+        waitingForUser = false;
+        handler.postDelayed(watchdog, STALL_TIMEOUT_MS);
+        if (request.applySaved) {
+            request.updater.startApplySaved(request.context, request.uiNotifier);
+        } else {
+            request.updater.startUpdate(request.context, request.uiNotifier, request.abortOnError);
+        }
+    }
+
+    void onUpdateFinished(ConfigUpdater updater, int result) {
+        if (running == null || running.updater != updater) {
+            // Stale completion of a superseded update
+            return;
+        }
+        Log.i(Const.LOG_TAG, "ConfigUpdateCoordinator: update finished, result=" + result);
+        Request finished = running;
+        running = null;
+        runningUpdater = null;
+        handler.removeCallbacks(watchdog);
+        lastResult = result;
+        for (Callback callback : finished.callbacks) {
+            callback.onConfigUpdateFinished(result);
+        }
+        if (queued != null) {
+            Request next = queued;
+            queued = null;
+            start(next);
+        }
+    }
+
+    // Called from any thread: download progress, the next item to install, the user's decision
+    void onFlightProgress(ConfigUpdater updater) {
+        if (updater == runningUpdater) {
+            lastProgress = SystemClock.elapsedRealtime();
+            waitingForUser = false;
+        }
+    }
+
+    void onFlightWaitingForUser(ConfigUpdater updater) {
+        if (updater == runningUpdater) {
+            waitingForUser = true;
+        }
+    }
+
+    private void checkStalled() {
+        if (running == null) {
+            return;
+        }
+        long idle = SystemClock.elapsedRealtime() - lastProgress;
+        if (waitingForUser || idle < STALL_TIMEOUT_MS) {
+            handler.postDelayed(watchdog, waitingForUser ? STALL_TIMEOUT_MS : STALL_TIMEOUT_MS - idle);
+            return;
+        }
+        Log.w(Const.LOG_TAG, "ConfigUpdateCoordinator: no progress for " + idle / 1000 + " sec, aborting the update");
+        ConfigUpdater updater = running.updater;
+        updater.abortUpdate();
+        onUpdateFinished(updater, RESULT_INCOMPLETE);
+    }
+}
@@ -24,14 +24,18 @@ import com.hmdm.launcher.json.DeviceInfo;
 import com.hmdm.launcher.json.RemoteFile;
 import com.hmdm.launcher.json.ServerConfig;
 import com.hmdm.launcher.pro.worker.DetailedInfoWorker;
+import com.hmdm.launcher.server.HttpClientKeeper;
 import com.hmdm.launcher.server.ServerServiceKeeper;
+import com.hmdm.launcher.server.TransferMetrics;
 import com.hmdm.launcher.task.ConfirmDeviceResetTask;
 import com.hmdm.launcher.task.ConfirmPasswordResetTask;
 import com.hmdm.launcher.task.ConfirmRebootTask;
 import com.hmdm.launcher.task.GetRemoteLogConfigTask;
 import com.hmdm.launcher.task.GetServerConfigTask;
+import com.hmdm.launcher.task.TaskLanes;
 import com.hmdm.launcher.util.DeviceInfoProvider;
 import com.hmdm.launcher.util.InstallUtils;
+import com.hmdm.launcher.util.ParallelDownloader;
 import com.hmdm.launcher.util.PushNotificationMqttWrapper;
 import com.hmdm.launcher.util.RemoteLogger;
 import com.hmdm.launcher.util.Utils;
@@ -66,7 +70,6 @@ public class ConfigUpdater {
         void onConfigUpdateComplete();
     };
 
-    private boolean configInitializing;
     private Context context;
     private UINotifier uiNotifier;
     private SettingsHelper settingsHelper;
@@ -77,6 +80,41 @@ public class ConfigUpdater {
     private Map<String, File> pendingInstallations = new HashMap<String,File>();
     private BroadcastReceiver appInstallReceiver;
     private boolean retry = true;
+    // ETag of the configuration being applied, saved when the update is complete
+    private String pendingConfigETag;
+    // Set when some files or apps failed to install, so the config must be re-applied next time
+    private boolean updateIncomplete;
+    // Skipped files and apps, removed from the config in one save when the installation is complete
+    private SettingsHelper.ConfigTransaction skippedItems;
+    // Changes since the last applied configuration, stages not affected by the changes are skipped
+    private ConfigDiff configDiff;
+    private ServerConfig pendingAppliedConfig;
+    private StageGraph stageGraph;
+    private Runnable onFilesInstalled;
+    private Runnable onAppsInstalled;
+    // Downloads the files and apps ahead while the previous ones are installed
+    private ParallelDownloader downloader = new ParallelDownloader();
+    // Incremented for each flight, callbacks of the previous flights are ignored
+    private volatile int generation;
+
+    // Update stages, see runUpdateStages() for the dependencies
+    private static final String STAGE_REMOTE_LOG = "remoteLog";
+    private static final String STAGE_MIGRATION = "migration";
+    private static final String STAGE_PUSH = "push";
+    private static final String STAGE_COMMANDS = "commands";
+    private static final String STAGE_DEFAULT_LAUNCHER = "defaultLauncher";
+    private static final String STAGE_POLICIES = "policies";
+    private static final String STAGE_CHECK_FILES = "checkFiles";
+    private static final String STAGE_CHECK_APPS = "checkApps";
+    private static final String STAGE_PREFETCH = "prefetch";
+    private static final String STAGE_INSTALL_FILES = "installFiles";
+    private static final String STAGE_INSTALL_APPS = "installApps";
+    private static final String STAGE_ACTIONS = "actions";
+
+    // Maximal delay of retrying the config request after a network error
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+    // Timeout of the stages waiting for the server
+    private static final long NETWORK_STAGE_TIMEOUT_MS = 60000;
 
     public List<Application> getApplicationsForRun() {
         return applicationsForRun;
@@ -87,24 +125,27 @@ public class ConfigUpdater {
             LocalBroadcastManager.getInstance(context).
                     sendBroadcast(new Intent(Const.ACTION_UPDATE_CONFIGURATION));
         } else {
+            // Merged with the running update if any
             new ConfigUpdater().updateConfig(context, null, false);
         }
     }
 
     public void updateConfig(final Context context, final UINotifier uiNotifier, final boolean abortOnError) {
-        if ( configInitializing ) {
-            Log.i(Const.LOG_TAG, "updateConfig(): configInitializing=true, exiting");
-            return;
-        }
+        updateConfig(context, uiNotifier, abortOnError, null);
+    }
 
-        Log.i(Const.LOG_TAG, "updateConfig(): set configInitializing=true");
-        configInitializing = true;
-        DetailedInfoWorker.requestConfigUpdate(context);
-        this.context = context;
-        this.uiNotifier = uiNotifier;
+    // The callback is called in the main thread when the update covering this request is finished
+    public void updateConfig(final Context context, final UINotifier uiNotifier, final boolean abortOnError,
+                             final ConfigUpdateCoordinator.Callback callback) {
+        ConfigUpdateCoordinator.getInstance().requestUpdate(this, context, uiNotifier, abortOnError, false, callback);
+    }
 
-        // Work around a strange bug with stale SettingsHelper instance: re-read its value
-        settingsHelper = SettingsHelper.getInstance(context.getApplicationContext());
+    // Called by ConfigUpdateCoordinator
+    void startUpdate(final Context context, final UINotifier uiNotifier, final boolean abortOnError) {
+        Log.i(Const.LOG_TAG, "updateConfig(): starting configuration update");
+        DetailedInfoWorker.requestConfigUpdate(context);
+        resetState(context, uiNotifier);
+        final int flight = generation;
 
         if (settingsHelper.getConfig() != null && settingsHelper.getConfig().getRestrictions() != null) {
             Utils.releaseUserRestrictions(context, settingsHelper.getConfig().getRestrictions());
@@ -116,34 +157,66 @@ public class ConfigUpdater {
             uiNotifier.onConfigUpdateStart();
         }
         new GetServerConfigTask( context ) {
+            private ServerConfig newConfig;
+            private ConfigDiff newConfigDiff;
+
+            @Override
+            protected Integer doInBackground( Void... voids ) {
+                Integer result = super.doInBackground(voids);
+                if (result != null && result == Const.TASK_SUCCESS) {
+                    // Comparing the full configurations is too slow for the main thread
+                    newConfig = settingsHelper.getConfig();
+                    newConfigDiff = ConfigDiff.compare(settingsHelper.getAppliedConfig(), newConfig);
+                }
+                return result;
+            }
+
             @Override
             protected void onPostExecute( Integer result ) {
                 super.onPostExecute( result );
-                configInitializing = false;
-                Log.i(Const.LOG_TAG, "updateConfig(): set configInitializing=false after getting config");
+                if (isSuperseded(flight)) {
+                    return;
+                }
 
                 switch ( result ) {
                     case Const.TASK_SUCCESS:
                         RemoteLogger.log(context, Const.LOG_INFO, "Configuration updated");
-                        updateRemoteLogConfig();
+                        pendingConfigETag = getConfigETag();
+                        pendingAppliedConfig = newConfig;
+                        configDiff = newConfigDiff;
+                        if (!configDiff.isFull()) {
+                            Log.i(Const.LOG_TAG, "updateConfig(): changed properties: " + configDiff.getChangedProperties());
+                        }
+                        runUpdateStages();
+                        break;
+                    case Const.TASK_NOT_MODIFIED:
+                        RemoteLogger.log(context, Const.LOG_DEBUG, "Configuration not modified");
+                        // Apps and files are still checked, they may have been removed or changed on the device
+                        configDiff = ConfigDiff.unchanged();
+                        runUpdateStages();
                         break;
                     case Const.TASK_ERROR:
                         RemoteLogger.log(context, Const.LOG_WARN, "Failed to update config: server error");
                         if (uiNotifier != null) {
                             uiNotifier.onConfigUpdateServerError();
                         }
+                        finishUpdate(ConfigUpdateCoordinator.RESULT_ERROR);
                         break;
                     case Const.TASK_NETWORK_ERROR:
                         RemoteLogger.log(context, Const.LOG_WARN, "Failed to update config: network error");
-                        if (retry) {
+                        // Don't wait for an overloaded server, apply the saved config instead
+                        long retryDelay = Math.max(15000, ServerServiceKeeper.getRetryDelay());
+                        if (retry && retryDelay <= MAX_RETRY_DELAY_MS) {
                             // Retry the request once because WiFi may not yet be initialized
                             retry = false;
                             handler.postDelayed(new Runnable() {
                                 @Override
                                 public void run() {
-                                    updateConfig(context, uiNotifier, abortOnError);
+                                    if (!isSuperseded(flight)) {
+                                        startUpdate(context, uiNotifier, abortOnError);
+                                    }
                                 }
-                            }, 15000);
+                            }, retryDelay);
                         } else {
                             if (settingsHelper.getConfig() != null && !abortOnError) {
                                 if (uiNotifier != null && settingsHelper.getConfig().isShowWifi()) {
@@ -151,26 +224,126 @@ public class ConfigUpdater {
                                     // if it is required by the web panel
                                     // so the user can set up WiFi even in kiosk mode
                                     uiNotifier.onConfigUpdateNetworkError();
+                                    finishUpdate(ConfigUpdateCoordinator.RESULT_NETWORK_ERROR);
                                 } else {
-                                    updateRemoteLogConfig();
+                                    configDiff = ConfigDiff.full();
+                                    runUpdateStages();
                                 }
                             } else {
                                 if (uiNotifier != null) {
                                     uiNotifier.onConfigUpdateNetworkError();
                                 }
+                                finishUpdate(ConfigUpdateCoordinator.RESULT_NETWORK_ERROR);
                             }
                         }
                         break;
                 }
             }
-        }.execute();
+        }.executeOnExecutor(TaskLanes.IO);
     }
 
     public void skipConfigLoad() {
-        updateRemoteLogConfig();
+        ConfigUpdateCoordinator.getInstance().requestUpdate(this, context, uiNotifier, false, true, null);
+    }
+
+    // Called by ConfigUpdateCoordinator
+    void startApplySaved(final Context context, final UINotifier uiNotifier) {
+        // Apply the saved configuration
+        resetState(context, uiNotifier);
+        configDiff = ConfigDiff.full();
+        runUpdateStages();
+    }
+
+    private void resetState(final Context context, final UINotifier uiNotifier) {
+        // Stage tasks of the previous flight may still be running
+        generation++;
+        if (stageGraph != null) {
+            stageGraph.cancel();
+        }
+        filesForInstall.clear();
+        applicationsForInstall.clear();
+        this.context = context;
+        this.uiNotifier = uiNotifier;
+        pendingConfigETag = null;
+        updateIncomplete = false;
+        // Skips of a restarted or superseded flight are kept, so the next flight doesn't retry them
+        commitSkippedItems();
+        pendingAppliedConfig = null;
+        settingsHelper = SettingsHelper.getInstance(context);
+    }
+
+    private void finishUpdate(int result) {
+        ConfigUpdateCoordinator.getInstance().onUpdateFinished(this, result);
+    }
+
+    private boolean isSuperseded(int flight) {
+        return flight != generation;
+    }
+
+    // Called by ConfigUpdateCoordinator when the flight is timed out
+    void abortUpdate() {
+        generation++;
+        if (stageGraph != null) {
+            stageGraph.cancel();
+        }
+        downloader.cancel();
+        filesForInstall.clear();
+        applicationsForInstall.clear();
+        commitSkippedItems();
+        unregisterAppInstallReceiver();
+        if (settingsHelper.getConfig() != null && settingsHelper.getConfig().getRestrictions() != null) {
+            Utils.lockUserRestrictions(context, settingsHelper.getConfig().getRestrictions());
+        }
+        if (uiNotifier != null) {
+            uiNotifier.onConfigUpdateComplete();
+        }
+    }
+
+    // Independent stages run concurrently: the remote log configuration, the push service setup,
+    // the file and app checks. Migration goes first because it restarts the update.
+    // Downloads start after the commands, which may reset the device.
+    // Files are installed before apps, and the restrictions are locked when everything is done.
+    private void runUpdateStages() {
+        if (stageGraph != null) {
+            stageGraph.cancel();
+        }
+        downloader.cancel();
+        ServerConfig config = settingsHelper.getConfig();
+        downloader = new ParallelDownloader(config != null && config.getParallelDownloads() != null ?
+                config.getParallelDownloads() : ParallelDownloader.DEFAULT_MAX_DOWNLOADS);
+        stageGraph = new StageGraph()
+                .add(STAGE_REMOTE_LOG, NETWORK_STAGE_TIMEOUT_MS, this::updateRemoteLogConfig)
+                .add(STAGE_MIGRATION, NETWORK_STAGE_TIMEOUT_MS, this::checkServerMigration)
+                .add(STAGE_PUSH, NETWORK_STAGE_TIMEOUT_MS, this::setupPushService, STAGE_MIGRATION)
+                .add(STAGE_COMMANDS, NETWORK_STAGE_TIMEOUT_MS, this::checkFactoryReset, STAGE_MIGRATION)
+                .add(STAGE_DEFAULT_LAUNCHER, NETWORK_STAGE_TIMEOUT_MS, this::setDefaultLauncher, STAGE_COMMANDS)
+                .add(STAGE_POLICIES, 0, this::updateLocationService, STAGE_DEFAULT_LAUNCHER)
+                .add(STAGE_CHECK_FILES, 0, this::checkFiles, STAGE_MIGRATION)
+                .add(STAGE_CHECK_APPS, 0, this::checkApplications, STAGE_MIGRATION)
+                .add(STAGE_PREFETCH, 0, this::prefetchDownloads, STAGE_COMMANDS, STAGE_CHECK_FILES, STAGE_CHECK_APPS)
+                .add(STAGE_INSTALL_FILES, 0, this::installFiles, STAGE_CHECK_FILES, STAGE_POLICIES, STAGE_PREFETCH)
+                .add(STAGE_INSTALL_APPS, 0, this::installApplications, STAGE_INSTALL_FILES, STAGE_CHECK_APPS)
+                .add(STAGE_ACTIONS, 0, this::lockRestrictions, STAGE_INSTALL_APPS, STAGE_PUSH, STAGE_REMOTE_LOG);
+        stageGraph.start(new StageGraph.Listener() {
+            @Override
+            public void onStageTimeout(String name) {
+                RemoteLogger.log(context, Const.LOG_WARN, "Configuration update stage " + name + " timed out");
+                updateIncomplete = true;
+            }
+
+            @Override
+            public void onComplete() {
+                completeUpdate();
+            }
+        });
     }
 
-    private void updateRemoteLogConfig() {
+    private void updateRemoteLogConfig(final Runnable onComplete) {
+        if (configDiff.isUnchanged()) {
+            // Requested only with a modified configuration
+            onComplete.run();
+            return;
+        }
         Log.i(Const.LOG_TAG, "updateRemoteLogConfig(): get logging configuration");
 
         GetRemoteLogConfigTask task = new GetRemoteLogConfigTask(context) {
@@ -179,15 +352,17 @@ public class ConfigUpdater {
                 super.onPostExecute( result );
                 Log.i(Const.LOG_TAG, "updateRemoteLogConfig(): result=" + result);
                 RemoteLogger.log(context, Const.LOG_INFO, "Device owner: " + Utils.isDeviceOwner(context));
-                checkServerMigration();
+                onComplete.run();
             }
         };
-        task.execute();
+        task.executeOnExecutor(TaskLanes.IO);
     }
 
-    private void checkServerMigration() {
-        if (settingsHelper != null && settingsHelper.getConfig() != null && settingsHelper.getConfig().getNewServerUrl() != null &&
+    private void checkServerMigration(final Runnable onComplete) {
+        if (configDiff.isChanged(ConfigDiff.NEW_SERVER_URL) && settingsHelper != null && settingsHelper.getConfig() != null && settingsHelper.getConfig().getNewServerUrl() != null &&
                 !settingsHelper.getConfig().getNewServerUrl().trim().equals("")) {
+            final int flight = generation;
+            final StageGraph graph = stageGraph;
             try {
                 final MigrationHelper migrationHelper = new MigrationHelper(settingsHelper.getConfig().getNewServerUrl().trim());
                 if (migrationHelper.needMigrating(context)) {
@@ -195,20 +370,36 @@ public class ConfigUpdater {
                     migrationHelper.tryNewServer(context, new MigrationHelper.CompletionHandler() {
                         @Override
                         public void onSuccess() {
+                            if (isSuperseded(flight)) {
+                                return;
+                            }
+                            if (!graph.isRunning(STAGE_MIGRATION)) {
+                                // The stage has timed out and the update went on with the old server:
+                                // restarting now would interrupt it. The timeout marked the update incomplete,
+                                // so the applied config isn't saved and the migration is retried by the next update
+                                RemoteLogger.log(context, Const.LOG_WARN, "Migration check completed too late, postponed");
+                                return;
+                            }
                             // Everything is OK, migrate!
                             RemoteLogger.log(context, Const.LOG_INFO, "Migrated to " + settingsHelper.getConfig().getNewServerUrl().trim());
                             settingsHelper.setBaseUrl(migrationHelper.getBaseUrl());
                             settingsHelper.setSecondaryBaseUrl(migrationHelper.getBaseUrl());
                             settingsHelper.setServerProject(migrationHelper.getServerProject());
                             ServerServiceKeeper.resetServices();
-                            configInitializing = false;
-                            updateConfig(context, uiNotifier, false);
+                            stageGraph.cancel();
+                            // Restart the update in the same flight
+                            startUpdate(context, uiNotifier, false);
                         }
 
                         @Override
                         public void onError(String cause) {
+                            if (isSuperseded(flight) || !graph.isRunning(STAGE_MIGRATION)) {
+                                return;
+                            }
+                            // Try again next time
+                            updateIncomplete = true;
                             RemoteLogger.log(context, Const.LOG_WARN, "Failed to migrate to " + settingsHelper.getConfig().getNewServerUrl().trim() + ": " + cause);
-                            setupPushService();
+                            onComplete.run();
                         }
                     });
                     return;
@@ -218,10 +409,14 @@ public class ConfigUpdater {
                 RemoteLogger.log(context, Const.LOG_WARN, "Failed to migrate to " + settingsHelper.getConfig().getNewServerUrl().trim() + ": malformed URL");
             }
         }
-        setupPushService();
+        onComplete.run();
     }
 
-    private void setupPushService() {
+    private void setupPushService(final Runnable onComplete) {
+        if (!configDiff.isChanged(ConfigDiff.PUSH_OPTIONS, ConfigDiff.KEEPALIVE_TIME)) {
+            onComplete.run();
+            return;
+        }
         String pushOptions = null;
         int keepaliveTime = Const.DEFAULT_PUSH_ALARM_KEEPALIVE_TIME_SEC;
         if (settingsHelper != null && settingsHelper.getConfig() != null) {
@@ -235,21 +430,19 @@ public class ConfigUpdater {
                 || pushOptions.equals(ServerConfig.PUSH_OPTIONS_MQTT_ALARM))) {
             try {
                 URL url = new URL(settingsHelper.getBaseUrl());
-                Runnable nextRunnable = () -> {
-                    checkFactoryReset();
-                };
                 PushNotificationMqttWrapper.getInstance().connect(context, url.getHost(), BuildConfig.MQTT_PORT,
-                        pushOptions, keepaliveTime, settingsHelper.getDeviceId(), nextRunnable, nextRunnable);
+                        pushOptions, keepaliveTime, settingsHelper.getDeviceId(), onComplete, onComplete);
             } catch (Exception e) {
                 e.printStackTrace();
-                checkFactoryReset();
+                onComplete.run();
             }
         } else {
-            checkFactoryReset();
+            onComplete.run();
         }
     }
 
-    private void checkFactoryReset() {
+    // Commands (reset, reboot, password reset) are executed whenever they're set, not only when changed
+    private void checkFactoryReset(final Runnable onComplete) {
         ServerConfig config = settingsHelper != null ? settingsHelper.getConfig() : null;
         if (config != null && config.getFactoryReset() != null && config.getFactoryReset()) {
             // We got a factory reset request, let's confirm and erase everything!
@@ -270,20 +463,20 @@ public class ConfigUpdater {
                         RemoteLogger.log(context, Const.LOG_WARN, "Device reset failed: no permissions");
                     }
                     // If we can't, proceed the initialization flow
-                    checkRemoteReboot();
+                    checkRemoteReboot(onComplete);
                 }
             };
 
             DeviceInfo deviceInfo = DeviceInfoProvider.getDeviceInfo(context, true, true);
             deviceInfo.setFactoryReset(Utils.checkAdminMode(context));
-            confirmTask.execute(deviceInfo);
+            confirmTask.executeOnExecutor(TaskLanes.IO, deviceInfo);
 
         } else {
-            checkRemoteReboot();
+            checkRemoteReboot(onComplete);
         }
     }
 
-    private void checkRemoteReboot() {
+    private void checkRemoteReboot(final Runnable onComplete) {
         ServerConfig config = settingsHelper != null ? settingsHelper.getConfig() : null;
         if (config != null && config.getReboot() != null && config.getReboot()) {
             // Log and confirm reboot before rebooting
@@ -300,20 +493,20 @@ public class ConfigUpdater {
                     } else {
                         RemoteLogger.log(context, Const.LOG_WARN, "Reboot failed: no permissions");
                     }
-                    checkPasswordReset();
+                    checkPasswordReset(onComplete);
                 }
             };
 
             DeviceInfo deviceInfo = DeviceInfoProvider.getDeviceInfo(context, true, true);
-            confirmTask.execute(deviceInfo);
+            confirmTask.executeOnExecutor(TaskLanes.IO, deviceInfo);
 
         } else {
-            checkPasswordReset();
+            checkPasswordReset(onComplete);
         }
 
     }
 
-    private void checkPasswordReset() {
+    private void checkPasswordReset(final Runnable onComplete) {
         ServerConfig config = settingsHelper != null ? settingsHelper.getConfig() : null;
         if (config != null && config.getPasswordReset() != null) {
             if (Utils.passwordReset(context, config.getPasswordReset())) {
@@ -325,19 +518,19 @@ public class ConfigUpdater {
             ConfirmPasswordResetTask confirmTask = new ConfirmPasswordResetTask(context) {
                 @Override
                 protected void onPostExecute( Integer result ) {
-                    setDefaultLauncher();
+                    onComplete.run();
                 }
             };
 
             DeviceInfo deviceInfo = DeviceInfoProvider.getDeviceInfo(context, true, true);
-            confirmTask.execute(deviceInfo);
+            confirmTask.executeOnExecutor(TaskLanes.IO, deviceInfo);
 
         } else {
-            setDefaultLauncher();
+            onComplete.run();
         }
     }
 
-    private void setDefaultLauncher() {
+    private void setDefaultLauncher(final Runnable onComplete) {
         ServerConfig config = settingsHelper != null ? settingsHelper.getConfig() : null;
         if (Utils.isDeviceOwner(context) && config != null) {
             // "Run default launcher" means we should not set Headwind MDM as a default launcher
@@ -359,38 +552,71 @@ public class ConfigUpdater {
 
                 @Override
                 protected void onPostExecute(Void v) {
-                    updateLocationService();
+                    onComplete.run();
                 }
-            }.execute();
+            }.executeOnExecutor(TaskLanes.CPU);
             return;
         }
-        updateLocationService();
+        onComplete.run();
     }
 
-    private void updateLocationService() {
+    private void updateLocationService(final Runnable onComplete) {
         if (uiNotifier != null) {
             uiNotifier.onPoliciesUpdated();
         }
         // onPoliciesUpdated() method contents
         // startLocationServiceWithRetry();
-        checkAndUpdateFiles();
+        onComplete.run();
     }
 
-    private void checkAndUpdateFiles() {
-        new AsyncTask<Void, Void, Void>() {
+    // Files and apps are checked even if unchanged in the configuration: this is a local check,
+    // and it restores the files and apps removed or changed on the device
+    private void checkFiles(final Runnable onComplete) {
+        ServerConfig config = settingsHelper.getConfig();
+        if (config == null || config.getFiles() == null) {
+            onComplete.run();
+            return;
+        }
+        final List<RemoteFile> files = new LinkedList<>(config.getFiles());
+        final int flight = generation;
+        new AsyncTask<Void, Void, List<RemoteFile>>() {
             @Override
-            protected Void doInBackground(Void... voids) {
-                ServerConfig config = settingsHelper.getConfig();
+            protected List<RemoteFile> doInBackground(Void... voids) {
                 // This may be a long procedure due to checksum calculation so execute it in the background thread
-                InstallUtils.generateFilesForInstallList(context, config.getFiles(), filesForInstall);
-                return null;
+                List<RemoteFile> result = new LinkedList<>();
+                InstallUtils.generateFilesForInstallList(context, files, result);
+                return result;
             }
 
             @Override
-            protected void onPostExecute(Void v) {
-                loadAndInstallFiles();
+            protected void onPostExecute(List<RemoteFile> result) {
+                if (isSuperseded(flight)) {
+                    return;
+                }
+                filesForInstall.addAll(result);
+                onComplete.run();
+            }
+        }.executeOnExecutor(TaskLanes.CPU);
+    }
+
+    // Queues the downloads in the installation order: files first, then apps
+    private void prefetchDownloads(final Runnable onComplete) {
+        for (RemoteFile remoteFile : filesForInstall) {
+            if (!remoteFile.isRemove()) {
+                downloader.prefetch(context, remoteFile.getUrl(), remoteFile.getChecksum());
+            }
+        }
+        for (Application application : applicationsForInstall) {
+            if (!application.isRemove()) {
+                downloader.prefetch(context, application.getUrl(), null);
             }
-        }.execute();
+        }
+        onComplete.run();
+    }
+
+    private void installFiles(final Runnable onComplete) {
+        onFilesInstalled = onComplete;
+        loadAndInstallFiles();
     }
 
     public static class RemoteFileStatus {
@@ -399,8 +625,10 @@ public class ConfigUpdater {
     }
 
     private void loadAndInstallFiles() {
+        reportProgress();
         if ( filesForInstall.size() > 0 ) {
             RemoteFile remoteFile = filesForInstall.remove(0);
+            final int flight = generation;
 
             new AsyncTask<RemoteFile, Void, RemoteFileStatus>() {
 
@@ -431,10 +659,12 @@ public class ConfigUpdater {
                         File file = null;
                         try {
                             RemoteLogger.log(context, Const.LOG_DEBUG, "Downloading file: " + remoteFile.getPath());
-                            file = InstallUtils.downloadFile(context, remoteFile.getUrl(),
+                            // The checksum is verified while downloading
+                            file = downloader.get(context, remoteFile.getUrl(), remoteFile.getChecksum(),
                                     new InstallUtils.DownloadProgress() {
                                         @Override
                                         public void onDownloadProgress(final int progress, final long total, final long current) {
+                                            reportProgress();
                                             if (uiNotifier != null) {
                                                 uiNotifier.onDownloadProgress(progress, total, current);
                                             }
@@ -488,12 +718,17 @@ public class ConfigUpdater {
 
                 @Override
                 protected void onPostExecute(RemoteFileStatus fileStatus) {
+                    if (isSuperseded(flight)) {
+                        return;
+                    }
                     if (fileStatus != null) {
-                        if (!fileStatus.installed) {
+                        if (!fileStatus.installed && uiNotifier == null) {
+                            // Nobody to ask whether to retry: skip the file until the next update
+                            updateIncomplete = true;
+                        } else if (!fileStatus.installed) {
                             filesForInstall.add( 0, fileStatus.remoteFile );
-                            if (uiNotifier != null) {
-                                uiNotifier.onFileDownloadError(fileStatus.remoteFile);
-                            }
+                            reportWaitingForUser();
+                            uiNotifier.onFileDownloadError(fileStatus.remoteFile);
                             // onFileDownloadError() method contents
                             /*
                             if (!ProUtils.kioskModeRequired(context)) {
@@ -514,15 +749,48 @@ public class ConfigUpdater {
                     loadAndInstallFiles();
                 }
 
-            }.execute(remoteFile);
+            }.executeOnExecutor(TaskLanes.INSTALL, remoteFile);
         } else {
             Log.i(Const.LOG_TAG, "Proceed to application update");
-            checkAndUpdateApplications();
+            if (onFilesInstalled != null) {
+                onFilesInstalled.run();
+            }
         }
     }
 
-    private void checkAndUpdateApplications() {
-        Log.i(Const.LOG_TAG, "checkAndUpdateApplications(): starting update applications");
+    private void checkApplications(final Runnable onComplete) {
+        ServerConfig config = settingsHelper.getConfig();
+        final List<Application> applications = config != null && config.getApplications() != null ?
+                new LinkedList<>(config.getApplications()) : new LinkedList<>();
+        final int flight = generation;
+        new AsyncTask<Void, Void, List<Application>>() {
+            private List<Application> deferred;
+
+            @Override
+            protected List<Application> doInBackground(Void... voids) {
+                List<Application> result = new LinkedList<>();
+                InstallUtils.generateApplicationsForInstallList(context, applications, applications, result);
+                deferred = RolloutHelper.deferApplications(context, result);
+                return result;
+            }
+
+            @Override
+            protected void onPostExecute(List<Application> result) {
+                if (isSuperseded(flight)) {
+                    return;
+                }
+                applicationsForInstall.addAll(result);
+                if (deferred.size() > 0) {
+                    // Not saving the applied config, so the deferred apps are checked again
+                    updateIncomplete = true;
+                }
+                onComplete.run();
+            }
+        }.executeOnExecutor(TaskLanes.CPU);
+    }
+
+    private void installApplications(final Runnable onComplete) {
+        Log.i(Const.LOG_TAG, "installApplications(): starting update applications");
         if (uiNotifier != null) {
             uiNotifier.onAppUpdateStart();
         }
@@ -531,13 +799,10 @@ public class ConfigUpdater {
         binding.setMessage( getString( R.string.main_activity_applications_update ) );
         configInitialized = true;
          */
-        configInitializing = false;
 
-        ServerConfig config = settingsHelper.getConfig();
-        InstallUtils.generateApplicationsForInstallList(context, config.getApplications(), applicationsForInstall);
-
-        Log.i(Const.LOG_TAG, "checkAndUpdateApplications(): list size=" + applicationsForInstall.size());
+        Log.i(Const.LOG_TAG, "installApplications(): list size=" + applicationsForInstall.size());
 
+        onAppsInstalled = onComplete;
         registerAppInstallReceiver();
         loadAndInstallApplications();
     }
@@ -549,8 +814,10 @@ public class ConfigUpdater {
 
     // Here we avoid ConcurrentModificationException by executing all operations with applicationForInstall list in a main thread
     private void loadAndInstallApplications() {
+        reportProgress();
         if ( applicationsForInstall.size() > 0 ) {
             Application application = applicationsForInstall.remove(0);
+            final int flight = generation;
 
             new AsyncTask<Application, Void, ApplicationStatus>() {
 
@@ -573,6 +840,9 @@ public class ConfigUpdater {
                         handler.post( new Runnable() {
                             @Override
                             public void run() {
+                                if (isSuperseded(flight)) {
+                                    return;
+                                }
                                 Log.i(Const.LOG_TAG, "loadAndInstallApplications(): proceed to next app");
                                 loadAndInstallApplications();
                             }
@@ -618,10 +888,11 @@ public class ConfigUpdater {
                         File file = null;
                         try {
                             RemoteLogger.log(context, Const.LOG_DEBUG, "Downloading app: " + application.getPkg());
-                            file = InstallUtils.downloadFile(context, application.getUrl(),
+                            file = downloader.get(context, application.getUrl(), null,
                                     new InstallUtils.DownloadProgress() {
                                         @Override
                                         public void onDownloadProgress(final int progress, final long total, final long current) {
+                                            reportProgress();
                                             if (uiNotifier != null) {
                                                 uiNotifier.onDownloadProgress(progress, total, current);
                                             }
@@ -664,16 +935,22 @@ public class ConfigUpdater {
 
                 @Override
                 protected void onPostExecute(ApplicationStatus applicationStatus) {
+                    if (isSuperseded(flight)) {
+                        return;
+                    }
                     if (applicationStatus != null) {
                         if (applicationStatus.installed) {
                             if (applicationStatus.application.isRunAfterInstall()) {
                                 applicationsForRun.add(applicationStatus.application);
                             }
+                        } else if (uiNotifier == null) {
+                            // Nobody to ask whether to retry: skip the app until the next update
+                            updateIncomplete = true;
+                            loadAndInstallApplications();
                         } else {
                             applicationsForInstall.add( 0, applicationStatus.application );
-                            if (uiNotifier != null) {
-                                uiNotifier.onAppDownloadError(applicationStatus.application);
-                            }
+                            reportWaitingForUser();
+                            uiNotifier.onAppDownloadError(applicationStatus.application);
                             // onAppDownloadError() method contents
                             /*
                             if (!ProUtils.kioskModeRequired(MainActivity.this)) {
@@ -691,21 +968,33 @@ public class ConfigUpdater {
                     }
                 }
 
-            }.execute(application);
+            }.executeOnExecutor(TaskLanes.INSTALL, application);
         } else {
             unregisterAppInstallReceiver();
-            lockRestrictions();
+            if (onAppsInstalled != null) {
+                onAppsInstalled.run();
+            }
         }
     }
 
-    private void lockRestrictions() {
+    private void commitSkippedItems() {
+        if (skippedItems != null) {
+            if (!skippedItems.commit()) {
+                Log.w(Const.LOG_TAG, "Configuration has been changed, skipped items are not saved");
+            }
+            skippedItems = null;
+        }
+    }
+
+    private void lockRestrictions(final Runnable onComplete) {
+        commitSkippedItems();
         if (settingsHelper.getConfig() != null && settingsHelper.getConfig().getRestrictions() != null) {
             Utils.lockUserRestrictions(context, settingsHelper.getConfig().getRestrictions());
         }
-        setActions();
+        setActions(onComplete);
     }
 
-    private void setActions() {
+    private void setActions(final Runnable onComplete) {
         final ServerConfig config = settingsHelper.getConfig();
         // As per the documentation, setting the default preferred activity should not be done on the main thread
         new AsyncTask<Void, Void, Void>() {
@@ -713,7 +1002,7 @@ public class ConfigUpdater {
             protected Void doInBackground(Void... voids) {
                 // If kiosk browser is installed, make it a default browser
                 // This is a temporary solution! Perhaps user wants only to open specific hosts / schemes
-                if (Utils.isDeviceOwner(context)) {
+                if (Utils.isDeviceOwner(context) && configDiff.isChanged(ConfigDiff.ACTIONS)) {
                     if (config.getActions() != null && config.getActions().size() > 0) {
                         for (Action action : config.getActions()) {
                             Utils.setAction(context, action);
@@ -725,16 +1014,33 @@ public class ConfigUpdater {
 
             @Override
             protected void onPostExecute(Void v) {
-                if (uiNotifier != null) {
-                    uiNotifier.onConfigUpdateComplete();
-                }
-                // onConfigUpdateComplete() method contents
-                /*
-                Log.i(Const.LOG_TAG, "Showing content from setActions()");
-                showContent(settingsHelper.getConfig());
-                 */
+                onComplete.run();
             }
-        }.execute();
+        }.executeOnExecutor(TaskLanes.CPU);
+    }
+
+    private void completeUpdate() {
+        // Delete the files downloaded for the skipped items
+        downloader.cancel();
+        Log.i(Const.LOG_TAG, "Configuration update complete, HTTP " + HttpClientKeeper.getStatistics());
+        Log.i(Const.LOG_TAG, "Transferred bytes: " + TransferMetrics.getReport());
+        if (!updateIncomplete) {
+            if (pendingConfigETag != null) {
+                settingsHelper.setConfigETag(pendingConfigETag);
+            }
+            if (pendingAppliedConfig != null) {
+                settingsHelper.setAppliedConfig(pendingAppliedConfig);
+            }
+        }
+        if (uiNotifier != null) {
+            uiNotifier.onConfigUpdateComplete();
+        }
+        // onConfigUpdateComplete() method contents
+        /*
+        Log.i(Const.LOG_TAG, "Showing content from setActions()");
+        showContent(settingsHelper.getConfig());
+         */
+        finishUpdate(updateIncomplete ? ConfigUpdateCoordinator.RESULT_INCOMPLETE : ConfigUpdateCoordinator.RESULT_SUCCESS);
     }
 
 
@@ -797,6 +1103,7 @@ public class ConfigUpdater {
                                     logRecord += ", extra: " + extraMessage;
                                 }
                                 RemoteLogger.log(context, Const.LOG_ERROR, logRecord);
+                                updateIncomplete = true;
                                 packageName = intent.getStringExtra(Const.PACKAGE_NAME);
                                 if (packageName != null) {
                                     File file = pendingInstallations.get(packageName);
@@ -826,6 +1133,7 @@ public class ConfigUpdater {
 
     private void installApplicationFromPlayMarket(final String uri, final String packageName) {
         RemoteLogger.log(context, Const.LOG_DEBUG, "Asking user to install app " + packageName);
+        reportWaitingForUser();
         Intent intent = new Intent(Intent.ACTION_VIEW);
         intent.setData(Uri.parse(uri));
         try {
@@ -843,6 +1151,7 @@ public class ConfigUpdater {
             startLauncherRestarter();
         }
         pendingInstallations.put(packageName, file);
+        final int flight = generation;
         String versionData = version == null || version.equals("0") ? "" : " " + version;
         if (Utils.isDeviceOwner(context) || BuildConfig.SYSTEM_PRIVILEGES) {
             RemoteLogger.log(context, Const.LOG_INFO, "Silently installing app " + packageName + versionData);
@@ -854,8 +1163,15 @@ public class ConfigUpdater {
                     if (file.exists()) {
                         file.delete();
                     }
+                    if (isSuperseded(flight)) {
+                        return;
+                    }
+                    updateIncomplete = true;
                     if (uiNotifier != null) {
+                        reportWaitingForUser();
                         uiNotifier.onAppInstallError(packageName);
+                    } else {
+                        handler.post(() -> loadAndInstallApplications());
                     }
                     /*
                     handler.post(new Runnable() {
@@ -878,6 +1194,7 @@ public class ConfigUpdater {
             });
         } else {
             RemoteLogger.log(context, Const.LOG_INFO, "Asking user to install app " + packageName + versionData);
+            reportWaitingForUser();
             InstallUtils.requestInstallApplication(context, file, new InstallUtils.InstallErrorHandler() {
                 @Override
                 public void onInstallError() {
@@ -885,6 +1202,10 @@ public class ConfigUpdater {
                     if (file.exists()) {
                         file.delete();
                     }
+                    if (isSuperseded(flight)) {
+                        return;
+                    }
+                    updateIncomplete = true;
                     handler.post(new Runnable() {
                         @Override
                         public void run() {
@@ -936,6 +1257,16 @@ public class ConfigUpdater {
         FileUtils.writeStringToFile(dstFile, content);
     }
 
+    // Keeps the flight watchdog from aborting an update which is slow but not stalled
+    private void reportProgress() {
+        ConfigUpdateCoordinator.getInstance().onFlightProgress(this);
+    }
+
+    // The watchdog doesn't abort the update until it continues after the user's decision
+    private void reportWaitingForUser() {
+        ConfigUpdateCoordinator.getInstance().onFlightWaitingForUser(this);
+    }
+
     public boolean isPendingAppInstall() {
         return applicationsForInstall.size() > 0;
     }
@@ -948,10 +1279,18 @@ public class ConfigUpdater {
         loadAndInstallApplications();
     }
 
+    private SettingsHelper.ConfigTransaction getSkippedItems() {
+        if (skippedItems == null) {
+            skippedItems = settingsHelper.beginConfigTransaction();
+        }
+        return skippedItems;
+    }
+
     public void skipDownloadFiles() {
         if (filesForInstall.size() > 0) {
             RemoteFile remoteFile = filesForInstall.remove(0);
-            settingsHelper.removeRemoteFile(remoteFile);
+            getSkippedItems().removeRemoteFile(remoteFile);
+            updateIncomplete = true;
         }
         loadAndInstallFiles();
     }
@@ -962,7 +1301,8 @@ public class ConfigUpdater {
             // Mark this app not to download any more until the config is refreshed
             // But we should not remove the app from a list because it may be
             // already installed!
-            settingsHelper.removeApplicationUrl(application);
+            getSkippedItems().removeApplicationUrl(application);
+            updateIncomplete = true;
         }
         loadAndInstallApplications();
     }
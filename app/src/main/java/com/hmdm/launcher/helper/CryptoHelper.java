@@ -32,15 +32,7 @@ public class CryptoHelper {
         try {
             MessageDigest md = MessageDigest.getInstance( MD5 );
             md.update( value.getBytes( UTF8 ) );
-            byte[] digest = md.digest();
-
-            char[] hexChars = new char[ digest.length * 2 ];
-            for ( int i = 0; i < digest.length; i++ ) {
-                int v = digest[ i ] & 0xFF;
-                hexChars[ i * 2 ] = hexArray[ v >>> 4 ];
-                hexChars[ i * 2 + 1 ] = hexArray[ v & 0x0F ];
-            }
-            return new String( hexChars ).toUpperCase();
+            return getHexString( md.digest() );
         } catch ( Exception e ) { throw new RuntimeException( e ); }
     }
 
@@ -48,16 +40,18 @@ public class CryptoHelper {
         try {
             MessageDigest md = MessageDigest.getInstance( "SHA-1" );
             md.update( value.getBytes( UTF8 ) );
-            byte[] digest = md.digest();
-
-            char[] hexChars = new char[ digest.length * 2 ];
-            for ( int i = 0; i < digest.length; i++ ) {
-                int v = digest[ i ] & 0xFF;
-                hexChars[ i * 2 ] = hexArray[ v >>> 4 ];
-                hexChars[ i * 2 + 1 ] = hexArray[ v & 0x0F ];
-            }
-            return new String( hexChars ).toUpperCase();
+            return getHexString( md.digest() );
         } catch ( Exception e ) { throw new RuntimeException( e ); }
     }
 
+    public static String getHexString( byte[] digest ) {
+        char[] hexChars = new char[ digest.length * 2 ];
+        for ( int i = 0; i < digest.length; i++ ) {
+            int v = digest[ i ] & 0xFF;
+            hexChars[ i * 2 ] = hexArray[ v >>> 4 ];
+            hexChars[ i * 2 + 1 ] = hexArray[ v & 0x0F ];
+        }
+        return new String( hexChars ).toUpperCase();
+    }
+
 }
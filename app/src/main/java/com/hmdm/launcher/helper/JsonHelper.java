@@ -0,0 +1,122 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.hmdm.launcher.json.DetailedInfo;
+import com.hmdm.launcher.json.DetailedInfoConfigResponse;
+import com.hmdm.launcher.json.DeviceCreateOptions;
+import com.hmdm.launcher.json.DeviceInfo;
+import com.hmdm.launcher.json.PushResponse;
+import com.hmdm.launcher.json.RemoteLogConfigResponse;
+import com.hmdm.launcher.json.RemoteLogItem;
+import com.hmdm.launcher.json.ServerConfig;
+import com.hmdm.launcher.json.ServerConfigPatchResponse;
+import com.hmdm.launcher.json.ServerConfigResponse;
+import com.hmdm.launcher.json.codec.JsonCodecModule;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide Jackson mapper with cached readers and writers.
+ * Building (de)serializers for the models takes time, so they are built once and shared.
+ * ObjectReader and ObjectWriter are immutable and thread-safe.
+ */
+public class JsonHelper {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JsonCodecModule());
+    private static final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    // Binary (Smile) encoding of the same data model, used for local storage
+    private static final ObjectMapper binaryMapper = new ObjectMapper(new SmileFactory())
+            .registerModule(new JsonCodecModule());
+    private static final Map<Class<?>, ObjectReader> binaryReaders = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ObjectWriter> binaryWriters = new ConcurrentHashMap<>();
+
+    // Models parsed or serialized at startup and on each configuration update
+    private static final Class<?>[] MODEL_TYPES = {
+            ServerConfig.class,
+            ServerConfigResponse.class,
+            ServerConfigPatchResponse.class,
+            DeviceCreateOptions.class,
+            DeviceInfo.class,
+            DetailedInfo.class,
+            DetailedInfoConfigResponse.class,
+            PushResponse.class,
+            RemoteLogConfigResponse.class,
+            RemoteLogItem.class
+    };
+
+    public static ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    public static ObjectReader getReader(Class<?> type) {
+        return getReader(objectMapper, readers, type);
+    }
+
+    public static ObjectWriter getWriter(Class<?> type) {
+        return getWriter(objectMapper, writers, type);
+    }
+
+    public static ObjectReader getBinaryReader(Class<?> type) {
+        return getReader(binaryMapper, binaryReaders, type);
+    }
+
+    public static ObjectWriter getBinaryWriter(Class<?> type) {
+        return getWriter(binaryMapper, binaryWriters, type);
+    }
+
+    private static ObjectReader getReader(ObjectMapper mapper, Map<Class<?>, ObjectReader> cache, Class<?> type) {
+        ObjectReader reader = cache.get(type);
+        if (reader == null) {
+            // The root deserializer is created here, so the reader is ready for use
+            reader = mapper.readerFor(type);
+            cache.put(type, reader);
+        }
+        return reader;
+    }
+
+    private static ObjectWriter getWriter(ObjectMapper mapper, Map<Class<?>, ObjectWriter> cache, Class<?> type) {
+        ObjectWriter writer = cache.get(type);
+        if (writer == null) {
+            writer = mapper.writerFor(type);
+            cache.put(type, writer);
+        }
+        return writer;
+    }
+
+    // Call this in a background thread at startup
+    public static void warmUp() {
+        for (Class<?> type : MODEL_TYPES) {
+            getReader(type);
+            getWriter(type);
+        }
+        // The stored configuration is read at startup
+        getBinaryReader(ServerConfig.class);
+        getBinaryWriter(ServerConfig.class);
+    }
+}
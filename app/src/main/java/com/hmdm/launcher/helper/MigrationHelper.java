@@ -10,6 +10,7 @@ import com.hmdm.launcher.json.ServerConfigResponse;
 import com.hmdm.launcher.server.ServerService;
 import com.hmdm.launcher.server.ServerServiceKeeper;
 import com.hmdm.launcher.server.ServerUrl;
+import com.hmdm.launcher.task.TaskLanes;
 
 import java.net.MalformedURLException;
 
@@ -64,7 +65,7 @@ public class MigrationHelper {
                 }
 
                 try {
-                    response = newServer.getServerConfig(serverUrl.serverProject, deviceId, signature, Build.CPU_ABI).execute();
+                    response = newServer.getServerConfig(serverUrl.serverProject, deviceId, signature, Build.CPU_ABI, null).execute();
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
@@ -97,6 +98,6 @@ public class MigrationHelper {
                     completionHandler.onError(error);
                 }
             }
-        }.execute();
+        }.executeOnExecutor(TaskLanes.IO);
     }
 }
@@ -0,0 +1,135 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.hmdm.launcher.Const;
+import com.hmdm.launcher.json.Application;
+import com.hmdm.launcher.json.ServerConfig;
+import com.hmdm.launcher.util.RemoteLogger;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Staggered rollout of app updates. If the configuration sets a rollout window,
+ * each device downloads the apps in its own deterministic slot inside the window,
+ * so the server doesn't serve the same APK to the whole fleet at once.
+ * Urgent apps, removals and apps not downloaded from the server are not delayed.
+ */
+public class RolloutHelper {
+    private static final String WORK_TAG_ROLLOUT = "com.hmdm.launcher.WORK_TAG_ROLLOUT";
+    private static final String JOB_ROLLOUT = "rollout";
+
+    // Removes the apps which should be installed later from the list and returns them.
+    // The configuration update is scheduled to the device slot in this case
+    public static List<Application> deferApplications(Context context, List<Application> applications) {
+        List<Application> deferred = new LinkedList<>();
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        ServerConfig config = settingsHelper.getConfig();
+        if (config == null || config.getRolloutWindow() == null || config.getRolloutWindow() <= 0 ||
+                !hasDownloads(applications)) {
+            // Next new versions start a new rollout
+            if (settingsHelper.getRolloutStartTime() != 0) {
+                settingsHelper.setRolloutStartTime(0);
+            }
+            return deferred;
+        }
+
+        long now = System.currentTimeMillis();
+        long start;
+        if (config.getRolloutStartTime() != null) {
+            start = config.getRolloutStartTime();
+        } else {
+            // Devices get the new config by push almost simultaneously, so the slots are aligned
+            start = settingsHelper.getRolloutStartTime();
+            if (start == 0) {
+                start = now;
+                settingsHelper.setRolloutStartTime(start);
+            }
+        }
+        long slotTime = start + ScheduleHelper.getSlot(context, JOB_ROLLOUT, config.getRolloutWindow() * 1000L);
+        if (slotTime <= now) {
+            return deferred;
+        }
+
+        Iterator<Application> it = applications.iterator();
+        while (it.hasNext()) {
+            Application application = it.next();
+            if (isDeferrable(application)) {
+                it.remove();
+                deferred.add(application);
+            }
+        }
+        RemoteLogger.log(context, Const.LOG_INFO, "Rollout: " + deferred.size() + " app(s) will be installed in "
+                + (slotTime - now) / 1000 + " sec");
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(RolloutWorker.class)
+                .addTag(Const.WORK_TAG_COMMON)
+                .setInitialDelay(slotTime - now, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context.getApplicationContext()).enqueueUniqueWork(WORK_TAG_ROLLOUT,
+                ExistingWorkPolicy.REPLACE, request);
+        return deferred;
+    }
+
+    private static boolean hasDownloads(List<Application> applications) {
+        for (Application application : applications) {
+            if (isDeferrable(application)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDeferrable(Application application) {
+        return !application.isUrgent() && !application.isRemove() && application.getUrl() != null &&
+                (application.getUrl().startsWith("http://") || application.getUrl().startsWith("https://"));
+    }
+
+    public static class RolloutWorker extends Worker {
+
+        private Context context;
+
+        public RolloutWorker(
+                @NonNull final Context context,
+                @NonNull WorkerParameters params) {
+            super(context, params);
+            this.context = context;
+        }
+
+        @NonNull
+        @Override
+        public Result doWork() {
+            RemoteLogger.log(context, Const.LOG_DEBUG, "Rollout slot reached, updating configuration");
+            ConfigUpdater.notifyConfigUpdate(context);
+            return Result.success();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import android.content.Context;
+
+import com.hmdm.launcher.json.ServerConfig;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Spreads the periodic and retry requests of the devices over time,
+ * so the fleet doesn't hit the server at once after a power outage or a server restart.
+ * Periodic jobs get a deterministic offset derived from the device ID, so each device
+ * keeps its own phase; retries get a randomized exponential backoff.
+ * The spread window can be set by the server in the configuration.
+ */
+public class ScheduleHelper {
+    // Job names, used to give each job its own phase
+    public static final String JOB_PUSH = "push";
+    public static final String JOB_CONFIG_UPDATE = "configUpdate";
+    public static final String JOB_DEVICE_INFO = "deviceInfo";
+
+    // Used if the server doesn't set the window
+    public static final long DEFAULT_SPREAD_WINDOW_MS = 15 * 60000;
+    // Retry delay grows up to this multiple of the base delay
+    private static final int MAX_BACKOFF_SHIFT = 3;
+
+    private static final Random random = new Random();
+    // Used if the device ID is not yet set
+    private static final String fallbackSeed = UUID.randomUUID().toString();
+
+    public static long getSpreadWindow(Context context) {
+        ServerConfig config = SettingsHelper.getInstance(context).getConfig();
+        if (config != null && config.getScheduleSpreadWindow() != null && config.getScheduleSpreadWindow() >= 0) {
+            return config.getScheduleSpreadWindow() * 1000L;
+        }
+        return DEFAULT_SPREAD_WINDOW_MS;
+    }
+
+    // Deterministic offset of the job in [0, min(period, spread window)), the same after restarts
+    public static long getPhase(Context context, String job, long periodMs) {
+        return getSlot(context, job, Math.min(periodMs, getSpreadWindow(context)));
+    }
+
+    // Deterministic offset of the device in [0, window)
+    public static long getSlot(Context context, String job, long window) {
+        String deviceId = SettingsHelper.getInstance(context).getDeviceId();
+        return getSlot(deviceId != null ? deviceId : fallbackSeed, job, window);
+    }
+
+    static long getSlot(String deviceId, String job, long window) {
+        if (window <= 0) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update((deviceId + ":" + job).getBytes());
+        // CRC32 is uniform enough to spread the devices, and is stable across app versions
+        return (long)((crc.getValue() / (double)(1L << 32)) * window);
+    }
+
+    // Interval of the periodic job shifted by the device phase
+    public static long getInterval(Context context, String job, long intervalMs) {
+        return intervalMs + getPhase(context, job, intervalMs);
+    }
+
+    // Exponential backoff from the base delay, plus a random part up to the spread window.
+    // Attempt is the number of preceding failures, starting from 0
+    public static long getRetryDelay(Context context, long baseDelayMs, int attempt) {
+        long backoff = baseDelayMs << Math.min(Math.max(attempt, 0), MAX_BACKOFF_SHIFT);
+        long window = Math.min(backoff, getSpreadWindow(context));
+        long jitter;
+        synchronized (random) {
+            jitter = window > 0 ? (long)(random.nextDouble() * window) : 0;
+        }
+        return backoff + jitter;
+    }
+}
@@ -22,17 +22,24 @@ package com.hmdm.launcher.helper;
 import android.content.Context;
 import android.content.SharedPreferences;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.hmdm.launcher.BuildConfig;
 import com.hmdm.launcher.json.Application;
 import com.hmdm.launcher.json.ApplicationSetting;
 import com.hmdm.launcher.json.RemoteFile;
 import com.hmdm.launcher.json.ServerConfig;
+import com.hmdm.launcher.json.ServerConfigPatch;
+import com.hmdm.launcher.json.ServerEndpoint;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,49 +54,96 @@ public class SettingsHelper {
     private static final String PREF_KEY_CONFIG_NAME = ".helpers.CONFIG_NAME";
     private static final String PREF_KEY_GROUP = ".helpers.GROUP";
     private static final String PREF_KEY_DEVICE_ID_USE = ".helpers.DEVICE_ID_USE";
+    // Legacy storage of the configuration, now it's stored by ConfigStore
     private static final String PREF_KEY_CONFIG = ".helpers.CONFIG";
     private static final String PREF_KEY_IP_ADDRESS = ".helpers.IP_ADDRESS";
     private static final String PREF_QR_PROVISIONING = ".helpers.QR_PROVISIONING";
     private static final String PREF_CFG_UPDATE_TIMESTAMP = ".helpers.CFG_UPDATE_TIMESTAMP";
+    private static final String PREF_KEY_ROLLOUT_START = ".helpers.ROLLOUT_START";
     private static final String PREF_KEY_ACTIVITY_RUNNING = ".helpers.ACTIVITY_RUNNING";
     // This prefix is for the compatibility with a legacy package name
     private static String PACKAGE_NAME;
 
     private SharedPreferences sharedPreferences;
-    private ServerConfig config;
-    private ServerConfig oldConfig;
-    private Map<String,ApplicationSetting> appSettings = new HashMap<>();
-    private Set<String> allowedClasses = new HashSet<>();
-
-    private static SettingsHelper instance;
+    private ConfigStore configStore;
+    // Null until the configuration is loaded
+    private volatile ConfigSnapshot snapshot;
+    // ETag of the configuration which has been completely applied by ConfigUpdater.
+    // It is intentionally not persisted: the first update after the launcher start
+    // must run the full update flow (for example, to connect to the MQTT server)
+    private volatile String configETag;
+    // Configuration which has been completely applied by ConfigUpdater, used to find changes
+    // in the next configuration. It isn't persisted for the same reason as the ETag
+    private volatile ServerConfig appliedConfig;
+
+    private static volatile SettingsHelper instance;
 
     public static SettingsHelper getInstance(Context context) {
         if (instance == null) {
-            instance = new SettingsHelper(context);
+            synchronized (SettingsHelper.class) {
+                if (instance == null) {
+                    instance = new SettingsHelper(context.getApplicationContext());
+                }
+            }
         }
 
         return instance;
     }
 
+    /**
+     * The configuration and the indexes built from it.
+     * A snapshot is never changed after it's published, so readers don't need locks
+     * and always see the indexes matching the configuration.
+     * Published ServerConfig objects must not be modified either, use copyConfig() to make changes.
+     */
+    private static class ConfigSnapshot {
+        final ServerConfig config;
+        final Map<String, ApplicationSetting> appSettings;
+        final Set<String> allowedClasses;
+
+        ConfigSnapshot(ServerConfig config) {
+            this(config, buildAppSettingsMap(config));
+        }
+
+        ConfigSnapshot(ServerConfig config, Map<String, ApplicationSetting> appSettings) {
+            this.config = config;
+            this.appSettings = Collections.unmodifiableMap(appSettings);
+            this.allowedClasses = Collections.unmodifiableSet(buildAllowedClassesSet(config));
+        }
+    }
+
     public SettingsHelper(Context context) {
         PACKAGE_NAME = context.getPackageName();
         sharedPreferences = context.getSharedPreferences(PACKAGE_NAME + PREFERENCES_ID, Context.MODE_PRIVATE );
-        initConfig();
+        configStore = new ConfigStore(context);
+    }
+
+    // The configuration is loaded on first use
+    private ConfigSnapshot getSnapshot() {
+        ConfigSnapshot current = snapshot;
+        return current != null ? current : loadConfig();
     }
 
-    private void initConfig() {
+    private synchronized ConfigSnapshot loadConfig() {
+        if (snapshot != null) {
+            return snapshot;
+        }
+        ServerConfig config = null;
         try {
-            if ( sharedPreferences.contains(PACKAGE_NAME + PREF_KEY_CONFIG) ) {
-                ObjectMapper mapper = new ObjectMapper();
-                config = mapper.readValue(
-                        sharedPreferences.getString(PACKAGE_NAME + PREF_KEY_CONFIG, "" ),
-                        ServerConfig.class );
-                updateAppSettingsMap(config);
-                updateAllowedClassesSet(config);
+            if (configStore.exists()) {
+                config = configStore.load();
+            } else if ( sharedPreferences.contains(PACKAGE_NAME + PREF_KEY_CONFIG) ) {
+                // Move the configuration saved by a previous version to the new storage
+                config = JsonHelper.getReader(ServerConfig.class).readValue(
+                        sharedPreferences.getString(PACKAGE_NAME + PREF_KEY_CONFIG, "" ) );
+                configStore.save(config);
+                sharedPreferences.edit().remove(PACKAGE_NAME + PREF_KEY_CONFIG).commit();
             }
         } catch ( Exception e ) {
             e.printStackTrace();
         }
+        snapshot = new ConfigSnapshot(config);
+        return snapshot;
     }
 
     // Warning: this may return false if the launcher has been updated from older version
@@ -110,6 +164,10 @@ public class SettingsHelper {
     }
 
     public boolean setBaseUrl( String baseUrl ) {
+        if (baseUrl == null || !baseUrl.equals(getBaseUrl())) {
+            clearServerEndpoints();
+        }
+        resetAppliedConfig();
         return sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_BASE_URL, baseUrl ).commit();
     }
 
@@ -118,14 +176,39 @@ public class SettingsHelper {
     }
 
     public boolean setSecondaryBaseUrl( String secondaryBaseUrl ) {
+        if (secondaryBaseUrl == null || !secondaryBaseUrl.equals(getSecondaryBaseUrl())) {
+            clearServerEndpoints();
+        }
+        resetAppliedConfig();
         return sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_SECONDARY_BASE_URL, secondaryBaseUrl ).commit();
     }
 
+    // Server nodes provided by the server, null if there are no nodes other than the base URLs
+    public List<ServerEndpoint> getServerEndpoints() {
+        ServerConfig config = getConfig();
+        if (config == null || config.getEndpoints() == null || config.getEndpoints().isEmpty()) {
+            return null;
+        }
+        return config.getEndpoints();
+    }
+
+    // The nodes of the previous server must not be used until the configuration is loaded from the new one
+    private void clearServerEndpoints() {
+        ServerConfig config = copyConfig();
+        if (config != null && config.getEndpoints() != null) {
+            config.setEndpoints(null);
+            // The full configuration must be loaded, a patch wouldn't restore the nodes
+            config.setRevision(null);
+            updateConfig(config);
+        }
+    }
+
     public String getServerProject() {
         return sharedPreferences.getString(PACKAGE_NAME + PREF_KEY_SERVER_PROJECT, BuildConfig.SERVER_PROJECT );
     }
 
     public boolean setServerProject( String serverProject ) {
+        resetAppliedConfig();
         return sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_SERVER_PROJECT, serverProject ).commit();
     }
 
@@ -134,6 +217,7 @@ public class SettingsHelper {
     }
 
     public boolean setDeviceId( String deviceId ) {
+        resetAppliedConfig();
         return sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_DEVICE_ID, deviceId ).commit();
     }
 
@@ -164,6 +248,14 @@ public class SettingsHelper {
         return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_CFG_UPDATE_TIMESTAMP, timestamp).commit();
     }
 
+    public long getRolloutStartTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_ROLLOUT_START, 0);
+    }
+
+    public boolean setRolloutStartTime(long timestamp) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_ROLLOUT_START, timestamp).commit();
+    }
+
     public boolean setCreateOptionCustomer(String customer) {
         if (customer == null) {
             return sharedPreferences.edit().remove(PACKAGE_NAME + PREF_KEY_CUSTOMER).commit();
@@ -212,106 +304,306 @@ public class SettingsHelper {
         return sharedPreferences.getStringSet(PACKAGE_NAME + PREF_KEY_GROUP, null);
     }
 
-    public void updateConfig( ServerConfig config ) {
+    public synchronized void updateConfig( ServerConfig config ) {
+        // Make sure the stored configuration isn't loaded later over the new one
+        getSnapshot();
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_CONFIG, objectMapper.writeValueAsString( config ) ).commit();
+            configStore.save(config);
         } catch ( Exception e ) {
             e.printStackTrace();
             // Do not apply changes when there's an error while writing settings
             return;
         }
-        updateAppSettingsMap(config);
-        updateAllowedClassesSet(config);
-        this.oldConfig = this.config;
-        this.config = config;
+        snapshot = new ConfigSnapshot(config);
     }
 
     public ServerConfig getConfig() {
-        return config;
+        return getSnapshot().config;
     }
 
-    public void removeRemoteFile(RemoteFile remoteFile) {
-        Iterator<RemoteFile> it = config.getFiles().iterator();
-        while (it.hasNext()) {
-            RemoteFile file = it.next();
-            if ( file.getPath().equals( remoteFile.getPath() ) ) {
-                it.remove();
-                updateConfig(config);
-                return;
+    // Returns a modifiable copy of the current configuration, save it by updateConfig()
+    public ServerConfig copyConfig() {
+        ServerConfig config = getSnapshot().config;
+        return config != null ? copyOf(config) : null;
+    }
+
+    // Deep copy of the configuration. ObjectMapper.convertValue() can't be used here:
+    // it returns the same object if it already has the requested type
+    private static ServerConfig copyOf(ServerConfig config) {
+        try {
+            return JsonHelper.getBinaryReader(ServerConfig.class).readValue(
+                    JsonHelper.getBinaryWriter(ServerConfig.class).writeValueAsBytes(config));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    // Returns a patched copy of the current configuration (not saved yet),
+    // or null if the patch doesn't match the current revision and the full configuration must be loaded
+    public ServerConfig applyConfigPatch(ServerConfigPatch patch) {
+        return applyConfigPatch(getSnapshot().config, patch);
+    }
+
+    static ServerConfig applyConfigPatch(ServerConfig config, ServerConfigPatch patch) {
+        if (config == null || config.getRevision() == null || patch.getRevision() == null ||
+                !config.getRevision().equals(patch.getBaseRevision())) {
+            return null;
+        }
+        try {
+            // Patch a copy: the current configuration must stay unchanged
+            ServerConfig patchedConfig = copyOf(config);
+            if (patch.getFields() != null) {
+                ObjectNode fields = patch.getFields().deepCopy();
+                // Lists are patched item by item
+                fields.remove(Arrays.asList("applications", "applicationSettings", "files", "actions"));
+                JsonHelper.getReader(ServerConfig.class).withValueToUpdate(patchedConfig).readValue(fields);
+            }
+            patchedConfig.setApplications(patchList(patchedConfig.getApplications(),
+                    patch.getApplications(), patch.getRemovedApplications(), ServerConfigPatch::getApplicationKey));
+            patchedConfig.setFiles(patchList(patchedConfig.getFiles(),
+                    patch.getFiles(), patch.getRemovedFiles(), RemoteFile::getPath));
+            patchedConfig.setApplicationSettings(patchList(patchedConfig.getApplicationSettings(),
+                    patch.getApplicationSettings(), patch.getRemovedApplicationSettings(), ServerConfigPatch::getApplicationSettingKey));
+            if (patch.getActions() != null) {
+                patchedConfig.setActions(patch.getActions());
             }
+            patchedConfig.setRevision(patch.getRevision());
+            return patchedConfig;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
         }
     }
 
-    public void removeApplication(Application application) {
-        Iterator<Application> it = config.getApplications().iterator();
-        while (it.hasNext()) {
-            Application app = it.next();
-            if (app.getPkg().equals(application.getPkg())) {
-                it.remove();
-                updateConfig(config);
-                return;
+    private interface KeyProvider<T> {
+        String getKey(T item);
+    }
+
+    // Changed items keep their position, new items are added to the end of the list
+    private static <T> List<T> patchList(List<T> items, List<T> changedItems, List<String> removedKeys, KeyProvider<T> keyProvider) {
+        Map<String, T> itemMap = new LinkedHashMap<>();
+        if (items != null) {
+            for (T item : items) {
+                itemMap.put(keyProvider.getKey(item), item);
+            }
+        }
+        if (removedKeys != null) {
+            for (String key : removedKeys) {
+                itemMap.remove(key);
+            }
+        }
+        if (changedItems != null) {
+            for (T item : changedItems) {
+                itemMap.put(keyProvider.getKey(item), item);
             }
         }
+        return new LinkedList<>(itemMap.values());
+    }
+
+    public String getConfigETag() {
+        return configETag;
+    }
+
+    public void setConfigETag(String configETag) {
+        this.configETag = configETag;
+    }
+
+    public ServerConfig getAppliedConfig() {
+        return appliedConfig;
+    }
+
+    public void setAppliedConfig(ServerConfig appliedConfig) {
+        this.appliedConfig = appliedConfig;
+    }
+
+    // The configuration must be fully applied after changing the server or the device ID
+    private void resetAppliedConfig() {
+        configETag = null;
+        appliedConfig = null;
+    }
+
+    public void removeRemoteFile(RemoteFile remoteFile) {
+        ConfigTransaction transaction = beginConfigTransaction();
+        transaction.removeRemoteFile(remoteFile);
+        transaction.commit();
+    }
+
+    public void removeApplication(Application application) {
+        ConfigTransaction transaction = beginConfigTransaction();
+        transaction.removeApplication(application);
+        transaction.commit();
     }
 
     public void removeApplicationUrl(Application application) {
-        Iterator<Application> it = config.getApplications().iterator();
-        while (it.hasNext()) {
-            Application app = it.next();
-            if (app.getPkg().equals(application.getPkg())) {
-                app.setUrl(null);
-                updateConfig(config);
+        ConfigTransaction transaction = beginConfigTransaction();
+        transaction.removeApplicationUrl(application);
+        transaction.commit();
+    }
+
+    // Use a transaction to apply multiple changes to the configuration and save it once
+    public ConfigTransaction beginConfigTransaction() {
+        return new ConfigTransaction(getSnapshot().config);
+    }
+
+    /**
+     * A set of changes to the configuration.
+     * Changes are applied to a copy, the current configuration stays unchanged until commit.
+     * Applications and files are matched by package and path, if there are duplicates, only the first one is changed.
+     */
+    public class ConfigTransaction {
+        private ServerConfig baseConfig;
+        private ServerConfig workingConfig;
+        private Map<String, Application> applications = new HashMap<>();
+        private Map<String, RemoteFile> files = new HashMap<>();
+        private Set<Object> removedItems = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        private boolean changed;
+
+        private ConfigTransaction(ServerConfig baseConfig) {
+            this.baseConfig = baseConfig;
+        }
+
+        // The copy is created on the first change
+        private ServerConfig getWorkingConfig() {
+            if (workingConfig == null && baseConfig != null) {
+                workingConfig = copyOf(baseConfig);
+                if (workingConfig.getApplications() != null) {
+                    for (Application application : workingConfig.getApplications()) {
+                        if (!applications.containsKey(application.getPkg())) {
+                            applications.put(application.getPkg(), application);
+                        }
+                    }
+                }
+                if (workingConfig.getFiles() != null) {
+                    for (RemoteFile file : workingConfig.getFiles()) {
+                        if (!files.containsKey(file.getPath())) {
+                            files.put(file.getPath(), file);
+                        }
+                    }
+                }
+            }
+            return workingConfig;
+        }
+
+        public void removeRemoteFile(RemoteFile remoteFile) {
+            if (getWorkingConfig() == null) {
                 return;
             }
+            RemoteFile file = files.remove(remoteFile.getPath());
+            if (file != null) {
+                removedItems.add(file);
+                changed = true;
+            }
+        }
+
+        public void removeApplication(Application application) {
+            if (getWorkingConfig() == null) {
+                return;
+            }
+            Application app = applications.remove(application.getPkg());
+            if (app != null) {
+                removedItems.add(app);
+                changed = true;
+            }
+        }
+
+        public void removeApplicationUrl(Application application) {
+            if (getWorkingConfig() == null) {
+                return;
+            }
+            Application app = applications.get(application.getPkg());
+            if (app != null) {
+                app.setUrl(null);
+                changed = true;
+            }
+        }
+
+        // Returns false if the configuration has been replaced after the transaction has begun,
+        // in this case the changes are discarded
+        public boolean commit() {
+            if (!changed) {
+                return true;
+            }
+            synchronized (SettingsHelper.this) {
+                if (getSnapshot().config != baseConfig) {
+                    return false;
+                }
+                if (!removedItems.isEmpty()) {
+                    workingConfig.setApplications(removeItems(workingConfig.getApplications()));
+                    workingConfig.setFiles(removeItems(workingConfig.getFiles()));
+                }
+                updateConfig(workingConfig);
+            }
+            // Further changes are applied to a new copy
+            baseConfig = workingConfig;
+            workingConfig = null;
+            applications.clear();
+            files.clear();
+            removedItems.clear();
+            changed = false;
+            return true;
+        }
+
+        private <T> List<T> removeItems(List<T> items) {
+            if (items == null) {
+                return null;
+            }
+            List<T> result = new LinkedList<>();
+            for (T item : items) {
+                if (!removedItems.contains(item)) {
+                    result.add(item);
+                }
+            }
+            return result;
         }
     }
 
-    private void updateAppSettingsMap(ServerConfig config) {
+    private static Map<String, ApplicationSetting> buildAppSettingsMap(ServerConfig config) {
+        Map<String, ApplicationSetting> appSettings = new HashMap<>();
         if (config == null || config.getApplicationSettings() == null) {
-            return;
+            return appSettings;
         }
-        appSettings.clear();
         for (ApplicationSetting setting : config.getApplicationSettings()) {
             String key = setting.getPackageId() + "." + setting.getName();
             appSettings.put(key, setting);
         }
+        return appSettings;
     }
 
-    private void updateAllowedClassesSet(ServerConfig config) {
+    private static Set<String> buildAllowedClassesSet(ServerConfig config) {
         if (config == null || config.getAllowedClasses() == null) {
-            return;
+            return new HashSet<>();
         }
         String[] allowedClassesList = config.getAllowedClasses().split(",");
-        // Is it thread-safe? Hopefully yes
-        allowedClasses = new HashSet<>(Arrays.asList(allowedClassesList));
+        return new HashSet<>(Arrays.asList(allowedClassesList));
     }
 
     public String getAppPreference(String packageId, String attr) {
         String key = packageId + "." + attr;
-        ApplicationSetting setting = appSettings.get(key);
+        ApplicationSetting setting = getSnapshot().appSettings.get(key);
         if (setting == null) {
             return null;
         }
         return setting.getValue();
     }
 
-    public boolean setAppPreference(String packageId, String attr, String value) {
+    public synchronized boolean setAppPreference(String packageId, String attr, String value) {
         String key = packageId + "." + attr;
-        ApplicationSetting setting = appSettings.get(key);
-        if (setting == null) {
-            setting = new ApplicationSetting();
-            setting.setPackageId(packageId);
-            setting.setName(attr);
-            setting.setType(1);     // 1 is string (default value)
-            setting.setReadOnly(false);
-            appSettings.put(key, setting);
-        }
-        if (setting.isReadOnly()) {
+        ConfigSnapshot current = getSnapshot();
+        ApplicationSetting setting = current.appSettings.get(key);
+        if (setting != null && setting.isReadOnly()) {
             return false;
         }
-        setting.setValue(value);
-        setting.setLastUpdate(System.currentTimeMillis());
+        // Published settings are not modified, the changed setting replaces them in a new snapshot
+        ApplicationSetting newSetting = new ApplicationSetting();
+        newSetting.setPackageId(packageId);
+        newSetting.setName(attr);
+        newSetting.setType(setting != null ? setting.getType() : 1);     // 1 is string (default value)
+        newSetting.setReadOnly(false);
+        newSetting.setValue(value);
+        newSetting.setLastUpdate(System.currentTimeMillis());
+        Map<String, ApplicationSetting> appSettings = new HashMap<>(current.appSettings);
+        appSettings.put(key, newSetting);
+        snapshot = new ConfigSnapshot(current.config, appSettings);
         return true;
     }
 
@@ -320,6 +612,6 @@ public class SettingsHelper {
     }
 
     public Set<String> getAllowedClasses() {
-        return allowedClasses;
+        return getSnapshot().allowedClasses;
     }
 }
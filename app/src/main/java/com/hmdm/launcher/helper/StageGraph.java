@@ -0,0 +1,148 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs the stages of a process in the order of their dependencies.
+ * A stage is started in the main thread as soon as all stages it depends on are complete,
+ * so independent stages run concurrently. The stage does its work asynchronously
+ * and calls the completion callback (from any thread) when it's done.
+ * A stage which doesn't complete in time is considered complete; its late completion is ignored.
+ */
+public class StageGraph {
+
+    public interface Stage {
+        void start(Runnable onComplete);
+    }
+
+    public interface Listener {
+        void onStageTimeout(String name);
+        void onComplete();
+    }
+
+    private static class Node {
+        String name;
+        Stage stage;
+        String[] dependencies;
+        long timeoutMs;
+        boolean started;
+        boolean complete;
+        Runnable timeout;
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private Listener listener;
+    private boolean finished;
+    private volatile boolean cancelled;
+
+    // Dependencies must be added before the stage, so the graph can't have cycles.
+    // Zero timeout means no timeout (for example, for stages waiting for the user)
+    public StageGraph add(String name, long timeoutMs, Stage stage, String... dependencies) {
+        for (String dependency : dependencies) {
+            if (!nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + name + " depends on unknown stage " + dependency);
+            }
+        }
+        Node node = new Node();
+        node.name = name;
+        node.stage = stage;
+        node.dependencies = dependencies;
+        node.timeoutMs = timeoutMs;
+        nodes.put(name, node);
+        return this;
+    }
+
+    public void start(Listener listener) {
+        this.listener = listener;
+        handler.post(this::startReadyStages);
+    }
+
+    // Stages which are already running are not interrupted, but their results are ignored
+    public void cancel() {
+        cancelled = true;
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Whether the result of the stage is still awaited: false after its timeout or the cancellation.
+    // Must be called in the main thread
+    public boolean isRunning(String name) {
+        Node node = nodes.get(name);
+        return !cancelled && node != null && node.started && !node.complete;
+    }
+
+    private void startReadyStages() {
+        if (cancelled) {
+            return;
+        }
+        for (final Node node : nodes.values()) {
+            if (!node.started && dependenciesComplete(node)) {
+                node.started = true;
+                if (node.timeoutMs > 0) {
+                    node.timeout = () -> onStageComplete(node, true);
+                    handler.postDelayed(node.timeout, node.timeoutMs);
+                }
+                node.stage.start(() -> handler.post(() -> onStageComplete(node, false)));
+            }
+        }
+        for (Node node : nodes.values()) {
+            if (!node.complete) {
+                return;
+            }
+        }
+        if (!finished) {
+            finished = true;
+            listener.onComplete();
+        }
+    }
+
+    private boolean dependenciesComplete(Node node) {
+        for (String dependency : node.dependencies) {
+            if (!nodes.get(dependency).complete) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void onStageComplete(Node node, boolean timedOut) {
+        if (cancelled || node.complete) {
+            return;
+        }
+        node.complete = true;
+        if (node.timeout != null) {
+            handler.removeCallbacks(node.timeout);
+        }
+        if (timedOut) {
+            listener.onStageTimeout(node.name);
+        }
+        startReadyStages();
+    }
+}
@@ -38,6 +38,8 @@ public class Application {
     private boolean runAfterInstall;
     private boolean runAtBoot;
     private boolean skipVersion;
+    // Installed immediately, ignoring the rollout window
+    private boolean urgent;
     private String iconText;
     private String icon;
     private Integer screenOrder;
@@ -134,6 +136,14 @@ public class Application {
         this.skipVersion = skipVersion;
     }
 
+    public boolean isUrgent() {
+        return urgent;
+    }
+
+    public void setUrgent(boolean urgent) {
+        this.urgent = urgent;
+    }
+
     public String getIconText() {
         return iconText;
     }
@@ -29,6 +29,9 @@ public class ServerConfig {
 
     private String newNumber;
 
+    // Configuration revision, used to request only changes from the server
+    private Long revision;
+
     private String backgroundColor;
     private String textColor;
     private String backgroundImageUrl;
@@ -59,6 +62,14 @@ public class ServerConfig {
 
     private String pushOptions;
     private Integer keepaliveTime;
+    // Periodic and retry requests of the devices are spread over this window, in seconds
+    private Integer scheduleSpreadWindow;
+    // App downloads are spread over this window, in seconds, starting from rolloutStartTime
+    // (or from the time when the device got the new app versions)
+    private Integer rolloutWindow;
+    private Long rolloutStartTime;
+    // Number of files and apps downloaded in parallel, 1 to download them one by one
+    private Integer parallelDownloads;
     private String requestUpdates;
 
     private Boolean usbStorage;
@@ -102,6 +113,9 @@ public class ServerConfig {
 
     private List<Action> actions = new LinkedList();
 
+    // Server nodes, the device selects its node by the device ID
+    private List<ServerEndpoint> endpoints;
+
     public static final String TITLE_NONE = "none";
     public static final String TITLE_DEVICE_ID = "deviceId";
     public static final int DEFAULT_ICON_SIZE = 100;
@@ -125,6 +139,14 @@ public class ServerConfig {
         this.newNumber = newNumber;
     }
 
+    public Long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(Long revision) {
+        this.revision = revision;
+    }
+
     public String getBackgroundColor() {
         return backgroundColor;
     }
@@ -341,6 +363,38 @@ public class ServerConfig {
         this.keepaliveTime = keepaliveTime;
     }
 
+    public Integer getScheduleSpreadWindow() {
+        return scheduleSpreadWindow;
+    }
+
+    public void setScheduleSpreadWindow(Integer scheduleSpreadWindow) {
+        this.scheduleSpreadWindow = scheduleSpreadWindow;
+    }
+
+    public Integer getRolloutWindow() {
+        return rolloutWindow;
+    }
+
+    public void setRolloutWindow(Integer rolloutWindow) {
+        this.rolloutWindow = rolloutWindow;
+    }
+
+    public Long getRolloutStartTime() {
+        return rolloutStartTime;
+    }
+
+    public void setRolloutStartTime(Long rolloutStartTime) {
+        this.rolloutStartTime = rolloutStartTime;
+    }
+
+    public Integer getParallelDownloads() {
+        return parallelDownloads;
+    }
+
+    public void setParallelDownloads(Integer parallelDownloads) {
+        this.parallelDownloads = parallelDownloads;
+    }
+
     public String getRequestUpdates() {
         return requestUpdates;
     }
@@ -572,4 +626,12 @@ public class ServerConfig {
     public void setActions(List<Action> actions) {
         this.actions = actions;
     }
+
+    public List<ServerEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(List<ServerEndpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
 }
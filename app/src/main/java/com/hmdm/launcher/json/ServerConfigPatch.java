@@ -0,0 +1,143 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.List;
+
+/**
+ * Changes between two configuration revisions.
+ * Lists contain added or changed items, "removed" lists contain keys of removed items:
+ * pkg + "@" + version for applications, path for files and packageId + "." + name for settings.
+ * Null value means "not changed".
+ */
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class ServerConfigPatch {
+
+    private Long baseRevision;
+    private Long revision;
+
+    // Changed scalar fields in the same format as in ServerConfig
+    private ObjectNode fields;
+
+    private List<Application> applications;
+    private List<String> removedApplications;
+
+    private List<RemoteFile> files;
+    private List<String> removedFiles;
+
+    private List<ApplicationSetting> applicationSettings;
+    private List<String> removedApplicationSettings;
+
+    // Actions are few, so they are sent as a whole list when changed
+    private List<Action> actions;
+
+    public ServerConfigPatch() {}
+
+    public static String getApplicationKey(Application application) {
+        return application.getPkg() + "@" + application.getVersion();
+    }
+
+    public static String getApplicationSettingKey(ApplicationSetting setting) {
+        return setting.getPackageId() + "." + setting.getName();
+    }
+
+    public Long getBaseRevision() {
+        return baseRevision;
+    }
+
+    public void setBaseRevision(Long baseRevision) {
+        this.baseRevision = baseRevision;
+    }
+
+    public Long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(Long revision) {
+        this.revision = revision;
+    }
+
+    public ObjectNode getFields() {
+        return fields;
+    }
+
+    public void setFields(ObjectNode fields) {
+        this.fields = fields;
+    }
+
+    public List<Application> getApplications() {
+        return applications;
+    }
+
+    public void setApplications(List<Application> applications) {
+        this.applications = applications;
+    }
+
+    public List<String> getRemovedApplications() {
+        return removedApplications;
+    }
+
+    public void setRemovedApplications(List<String> removedApplications) {
+        this.removedApplications = removedApplications;
+    }
+
+    public List<RemoteFile> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<RemoteFile> files) {
+        this.files = files;
+    }
+
+    public List<String> getRemovedFiles() {
+        return removedFiles;
+    }
+
+    public void setRemovedFiles(List<String> removedFiles) {
+        this.removedFiles = removedFiles;
+    }
+
+    public List<ApplicationSetting> getApplicationSettings() {
+        return applicationSettings;
+    }
+
+    public void setApplicationSettings(List<ApplicationSetting> applicationSettings) {
+        this.applicationSettings = applicationSettings;
+    }
+
+    public List<String> getRemovedApplicationSettings() {
+        return removedApplicationSettings;
+    }
+
+    public void setRemovedApplicationSettings(List<String> removedApplicationSettings) {
+        this.removedApplicationSettings = removedApplicationSettings;
+    }
+
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    public void setActions(List<Action> actions) {
+        this.actions = actions;
+    }
+}
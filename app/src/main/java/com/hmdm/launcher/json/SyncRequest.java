@@ -0,0 +1,64 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * Combined sync request: pending log items, changed device info fields and a push message query.
+ */
+@JsonIgnoreProperties( ignoreUnknown = true )
+@JsonInclude( JsonInclude.Include.NON_NULL )
+public class SyncRequest {
+    private List<RemoteLogItem> logs;
+    // Fields of DeviceInfo changed since the last sync (the device ID is always included)
+    private JsonNode deviceInfo;
+    private boolean queryPush;
+
+    public SyncRequest() {}
+
+    public List<RemoteLogItem> getLogs() {
+        return logs;
+    }
+
+    public void setLogs( List<RemoteLogItem> logs ) {
+        this.logs = logs;
+    }
+
+    public JsonNode getDeviceInfo() {
+        return deviceInfo;
+    }
+
+    public void setDeviceInfo( JsonNode deviceInfo ) {
+        this.deviceInfo = deviceInfo;
+    }
+
+    public boolean isQueryPush() {
+        return queryPush;
+    }
+
+    public void setQueryPush( boolean queryPush ) {
+        this.queryPush = queryPush;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.hmdm.launcher.json.Action;
+
+import java.io.IOException;
+
+public class ActionCodec extends JsonCodec<Action> {
+
+    private static final SerializedString ACTION = new SerializedString("action");
+    private static final SerializedString CATEGORIES = new SerializedString("categories");
+    private static final SerializedString PACKAGE_ID = new SerializedString("packageId");
+    private static final SerializedString ACTIVITY = new SerializedString("activity");
+    private static final SerializedString SCHEMES = new SerializedString("schemes");
+    private static final SerializedString HOSTS = new SerializedString("hosts");
+    private static final SerializedString MIME_TYPES = new SerializedString("mimeTypes");
+
+    public ActionCodec() {
+        super(Action.class, ACTION, CATEGORIES, PACKAGE_ID, ACTIVITY, SCHEMES, HOSTS, MIME_TYPES);
+    }
+
+    @Override
+    protected Action create() {
+        return new Action();
+    }
+
+    @Override
+    protected boolean readProperty(JsonParser p, DeserializationContext ctxt, Action value, String name) throws IOException {
+        switch (name) {
+            case "action":
+                value.setAction(readString(p, ctxt));
+                return true;
+            case "categories":
+                value.setCategories(readString(p, ctxt));
+                return true;
+            case "packageId":
+                value.setPackageId(readString(p, ctxt));
+                return true;
+            case "activity":
+                value.setActivity(readString(p, ctxt));
+                return true;
+            case "schemes":
+                value.setSchemes(readString(p, ctxt));
+                return true;
+            case "hosts":
+                value.setHosts(readString(p, ctxt));
+                return true;
+            case "mimeTypes":
+                value.setMimeTypes(readString(p, ctxt));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeProperties(JsonGenerator gen, Action value) throws IOException {
+        writeString(gen, ACTION, value.getAction());
+        writeString(gen, CATEGORIES, value.getCategories());
+        writeString(gen, PACKAGE_ID, value.getPackageId());
+        writeString(gen, ACTIVITY, value.getActivity());
+        writeString(gen, SCHEMES, value.getSchemes());
+        writeString(gen, HOSTS, value.getHosts());
+        writeString(gen, MIME_TYPES, value.getMimeTypes());
+    }
+}
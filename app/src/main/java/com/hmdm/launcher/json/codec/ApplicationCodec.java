@@ -0,0 +1,139 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.hmdm.launcher.json.Application;
+
+import java.io.IOException;
+
+public class ApplicationCodec extends JsonCodec<Application> {
+
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString PKG = new SerializedString("pkg");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString URL = new SerializedString("url");
+    private static final SerializedString USE_KIOSK = new SerializedString("useKiosk");
+    private static final SerializedString SHOW_ICON = new SerializedString("showIcon");
+    private static final SerializedString REMOVE = new SerializedString("remove");
+    private static final SerializedString RUN_AFTER_INSTALL = new SerializedString("runAfterInstall");
+    private static final SerializedString RUN_AT_BOOT = new SerializedString("runAtBoot");
+    private static final SerializedString SKIP_VERSION = new SerializedString("skipVersion");
+    private static final SerializedString URGENT = new SerializedString("urgent");
+    private static final SerializedString ICON_TEXT = new SerializedString("iconText");
+    private static final SerializedString ICON = new SerializedString("icon");
+    private static final SerializedString SCREEN_ORDER = new SerializedString("screenOrder");
+    private static final SerializedString KEY_CODE = new SerializedString("keyCode");
+    private static final SerializedString BOTTOM = new SerializedString("bottom");
+
+    public ApplicationCodec() {
+        super(Application.class, TYPE, NAME, PKG, VERSION, URL, USE_KIOSK, SHOW_ICON, REMOVE,
+                RUN_AFTER_INSTALL, RUN_AT_BOOT, SKIP_VERSION, URGENT, ICON_TEXT, ICON, SCREEN_ORDER, KEY_CODE, BOTTOM);
+    }
+
+    @Override
+    protected Application create() {
+        return new Application();
+    }
+
+    @Override
+    protected boolean readProperty(JsonParser p, DeserializationContext ctxt, Application value, String name) throws IOException {
+        switch (name) {
+            case "type":
+                value.setType(readString(p, ctxt));
+                return true;
+            case "name":
+                value.setName(readString(p, ctxt));
+                return true;
+            case "pkg":
+                value.setPkg(readString(p, ctxt));
+                return true;
+            case "version":
+                value.setVersion(readString(p, ctxt));
+                return true;
+            case "url":
+                value.setUrl(readString(p, ctxt));
+                return true;
+            case "useKiosk":
+                value.setUseKiosk(readBoolean(p, ctxt));
+                return true;
+            case "showIcon":
+                value.setShowIcon(readBoolean(p, ctxt));
+                return true;
+            case "remove":
+                value.setRemove(readBoolean(p, ctxt));
+                return true;
+            case "runAfterInstall":
+                value.setRunAfterInstall(readBoolean(p, ctxt));
+                return true;
+            case "runAtBoot":
+                value.setRunAtBoot(readBoolean(p, ctxt));
+                return true;
+            case "skipVersion":
+                value.setSkipVersion(readBoolean(p, ctxt));
+                return true;
+            case "urgent":
+                value.setUrgent(readBoolean(p, ctxt));
+                return true;
+            case "iconText":
+                value.setIconText(readString(p, ctxt));
+                return true;
+            case "icon":
+                value.setIcon(readString(p, ctxt));
+                return true;
+            case "screenOrder":
+                value.setScreenOrder(readInteger(p, ctxt));
+                return true;
+            case "keyCode":
+                value.setKeyCode(readInteger(p, ctxt));
+                return true;
+            case "bottom":
+                value.setBottom(readBoolean(p, ctxt));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeProperties(JsonGenerator gen, Application value) throws IOException {
+        writeString(gen, TYPE, value.getType());
+        writeString(gen, NAME, value.getName());
+        writeString(gen, PKG, value.getPkg());
+        writeString(gen, VERSION, value.getVersion());
+        writeString(gen, URL, value.getUrl());
+        writeBoolean(gen, USE_KIOSK, value.isUseKiosk());
+        writeBoolean(gen, SHOW_ICON, value.isShowIcon());
+        writeBoolean(gen, REMOVE, value.isRemove());
+        writeBoolean(gen, RUN_AFTER_INSTALL, value.isRunAfterInstall());
+        writeBoolean(gen, RUN_AT_BOOT, value.isRunAtBoot());
+        writeBoolean(gen, SKIP_VERSION, value.isSkipVersion());
+        writeBoolean(gen, URGENT, value.isUrgent());
+        writeString(gen, ICON_TEXT, value.getIconText());
+        writeString(gen, ICON, value.getIcon());
+        writeInteger(gen, SCREEN_ORDER, value.getScreenOrder());
+        writeInteger(gen, KEY_CODE, value.getKeyCode());
+        writeBoolean(gen, BOTTOM, value.isBottom());
+    }
+}
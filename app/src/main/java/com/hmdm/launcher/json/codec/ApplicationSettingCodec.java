@@ -0,0 +1,83 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.hmdm.launcher.json.ApplicationSetting;
+
+import java.io.IOException;
+
+public class ApplicationSettingCodec extends JsonCodec<ApplicationSetting> {
+
+    private static final SerializedString PACKAGE_ID = new SerializedString("packageId");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString VALUE = new SerializedString("value");
+    private static final SerializedString READ_ONLY = new SerializedString("readOnly");
+    private static final SerializedString LAST_UPDATE = new SerializedString("lastUpdate");
+
+    public ApplicationSettingCodec() {
+        super(ApplicationSetting.class, PACKAGE_ID, NAME, TYPE, VALUE, READ_ONLY, LAST_UPDATE);
+    }
+
+    @Override
+    protected ApplicationSetting create() {
+        return new ApplicationSetting();
+    }
+
+    @Override
+    protected boolean readProperty(JsonParser p, DeserializationContext ctxt, ApplicationSetting value, String name) throws IOException {
+        switch (name) {
+            case "packageId":
+                value.setPackageId(readString(p, ctxt));
+                return true;
+            case "name":
+                value.setName(readString(p, ctxt));
+                return true;
+            case "type":
+                value.setType(readInt(p, ctxt));
+                return true;
+            case "value":
+                value.setValue(readString(p, ctxt));
+                return true;
+            case "readOnly":
+                value.setReadOnly(readBoolean(p, ctxt));
+                return true;
+            case "lastUpdate":
+                value.setLastUpdate(readLong(p, ctxt));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeProperties(JsonGenerator gen, ApplicationSetting value) throws IOException {
+        writeString(gen, PACKAGE_ID, value.getPackageId());
+        writeString(gen, NAME, value.getName());
+        writeInt(gen, TYPE, value.getType());
+        writeString(gen, VALUE, value.getValue());
+        writeBoolean(gen, READ_ONLY, value.isReadOnly());
+        writeLong(gen, LAST_UPDATE, value.getLastUpdate());
+    }
+}
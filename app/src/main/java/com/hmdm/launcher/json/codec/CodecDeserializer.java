@@ -0,0 +1,92 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBase;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Jackson deserializer backed by a codec.
+ * Properties unknown to the codec are read by the default bean deserializer.
+ */
+class CodecDeserializer<T> extends StdDeserializer<T> implements ResolvableDeserializer {
+
+    private final JsonCodec<T> codec;
+    private final JsonDeserializer<?> defaultDeserializer;
+
+    CodecDeserializer(JsonCodec<T> codec, JsonDeserializer<?> defaultDeserializer) {
+        super(codec.getType());
+        this.codec = codec;
+        this.defaultDeserializer = defaultDeserializer;
+    }
+
+    @Override
+    public void resolve(DeserializationContext ctxt) throws JsonMappingException {
+        if (defaultDeserializer instanceof ResolvableDeserializer) {
+            ((ResolvableDeserializer) defaultDeserializer).resolve(ctxt);
+        }
+    }
+
+    @Override
+    public T deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        return deserialize(p, ctxt, codec.create());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T deserialize(JsonParser p, DeserializationContext ctxt, T value) throws IOException {
+        String name;
+        if (p.isExpectedStartObjectToken()) {
+            name = p.nextFieldName();
+        } else if (p.hasToken(JsonToken.FIELD_NAME)) {
+            name = p.getCurrentName();
+        } else {
+            return (T) ctxt.handleUnexpectedToken(handledType(), p);
+        }
+        for (; name != null; name = p.nextFieldName()) {
+            p.nextToken();
+            if (!codec.readProperty(p, ctxt, value, name)) {
+                readUnknownProperty(p, ctxt, value, name);
+            }
+        }
+        return value;
+    }
+
+    private void readUnknownProperty(JsonParser p, DeserializationContext ctxt, T value, String name) throws IOException {
+        if (defaultDeserializer instanceof BeanDeserializerBase) {
+            SettableBeanProperty property = ((BeanDeserializerBase) defaultDeserializer).findProperty(name);
+            if (property != null) {
+                property.deserializeAndSet(p, ctxt, value);
+                return;
+            }
+        }
+        // All models ignore unknown properties
+        p.skipChildren();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Streaming reader and writer for a single model class.
+ * Codecs access the model by its getters and setters, without reflection,
+ * which is notably faster on low-end devices than the Jackson bean (de)serializers.
+ * Codecs are registered in Jackson by JsonCodecModule.
+ */
+public abstract class JsonCodec<T> {
+
+    private final Class<T> type;
+    private final Set<String> propertyNames = new HashSet<>();
+
+    protected JsonCodec(Class<T> type, SerializableString... properties) {
+        this.type = type;
+        for (SerializableString property : properties) {
+            propertyNames.add(property.getValue());
+        }
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public Set<String> getPropertyNames() {
+        return Collections.unmodifiableSet(propertyNames);
+    }
+
+    protected abstract T create();
+
+    // The parser points to the property value; returns false if the property is unknown
+    protected abstract boolean readProperty(JsonParser p, DeserializationContext ctxt, T value, String name) throws IOException;
+
+    protected abstract void writeProperties(JsonGenerator gen, T value) throws IOException;
+
+    // Unexpected tokens are passed to Jackson to get the same type coercion and errors
+
+    protected static String readString(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.getCurrentToken();
+        if (t == JsonToken.VALUE_STRING) {
+            return p.getText();
+        }
+        if (t == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return ctxt.readValue(p, String.class);
+    }
+
+    protected static boolean readBoolean(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.getCurrentToken();
+        if (t == JsonToken.VALUE_TRUE) {
+            return true;
+        }
+        if (t == JsonToken.VALUE_FALSE || t == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        return ctxt.readValue(p, Boolean.TYPE);
+    }
+
+    protected static int readInt(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.getCurrentToken();
+        if (t == JsonToken.VALUE_NUMBER_INT) {
+            return p.getIntValue();
+        }
+        if (t == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+        return ctxt.readValue(p, Integer.TYPE);
+    }
+
+    protected static Integer readInteger(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.getCurrentToken();
+        if (t == JsonToken.VALUE_NUMBER_INT) {
+            return p.getIntValue();
+        }
+        if (t == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return ctxt.readValue(p, Integer.class);
+    }
+
+    protected static long readLong(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.getCurrentToken();
+        if (t == JsonToken.VALUE_NUMBER_INT) {
+            return p.getLongValue();
+        }
+        if (t == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+        return ctxt.readValue(p, Long.TYPE);
+    }
+
+    protected static void writeString(JsonGenerator gen, SerializableString name, String value) throws IOException {
+        gen.writeFieldName(name);
+        gen.writeString(value);
+    }
+
+    protected static void writeBoolean(JsonGenerator gen, SerializableString name, boolean value) throws IOException {
+        gen.writeFieldName(name);
+        gen.writeBoolean(value);
+    }
+
+    protected static void writeInt(JsonGenerator gen, SerializableString name, int value) throws IOException {
+        gen.writeFieldName(name);
+        gen.writeNumber(value);
+    }
+
+    protected static void writeInteger(JsonGenerator gen, SerializableString name, Integer value) throws IOException {
+        gen.writeFieldName(name);
+        if (value != null) {
+            gen.writeNumber(value);
+        } else {
+            gen.writeNull();
+        }
+    }
+
+    protected static void writeLong(JsonGenerator gen, SerializableString name, long value) throws IOException {
+        gen.writeFieldName(name);
+        gen.writeNumber(value);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBase;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+import com.hmdm.launcher.Const;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Replaces the Jackson bean (de)serializers of the models by hand-written streaming codecs.
+ * Only the models repeated many times in the configuration and in the uploaded data have codecs:
+ * Application, ApplicationSetting, RemoteFile, Action and RemoteLogItem. The enclosing objects
+ * (ServerConfig, DeviceInfo, DetailedInfo) are still handled by the Jackson bean (de)serializers.
+ * A codec missing a property of its model is detected by JsonCodecTest; at runtime the property
+ * is read by the default deserializer and the model is written by the default serializer.
+ */
+public class JsonCodecModule extends SimpleModule {
+
+    private final Map<Class<?>, JsonCodec<?>> codecs = new HashMap<>();
+
+    public JsonCodecModule() {
+        super("JsonCodecModule");
+        addCodec(new ApplicationCodec());
+        addCodec(new ApplicationSettingCodec());
+        addCodec(new RemoteFileCodec());
+        addCodec(new ActionCodec());
+        addCodec(new RemoteLogItemCodec());
+
+        setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+                JsonCodec<?> codec = codecs.get(beanDesc.getBeanClass());
+                if (codec == null) {
+                    return deserializer;
+                }
+                checkDeserializer(codec, deserializer);
+                return createDeserializer(codec, deserializer);
+            }
+        });
+        setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc, JsonSerializer<?> serializer) {
+                JsonCodec<?> codec = codecs.get(beanDesc.getBeanClass());
+                if (codec == null || !isCompatible(codec, serializer)) {
+                    return serializer;
+                }
+                return new CodecSerializer<>(codec);
+            }
+        });
+    }
+
+    private void addCodec(JsonCodec<?> codec) {
+        codecs.put(codec.getType(), codec);
+    }
+
+    Collection<JsonCodec<?>> getCodecs() {
+        return codecs.values();
+    }
+
+    private static <T> JsonDeserializer<T> createDeserializer(JsonCodec<T> codec, JsonDeserializer<?> defaultDeserializer) {
+        return new CodecDeserializer<>(codec, defaultDeserializer);
+    }
+
+    // Properties missing in the codec are read by the default deserializer, slower but without losing data
+    private static void checkDeserializer(JsonCodec<?> codec, JsonDeserializer<?> deserializer) {
+        if (!(deserializer instanceof BeanDeserializerBase)) {
+            return;
+        }
+        Iterator<SettableBeanProperty> properties = ((BeanDeserializerBase) deserializer).properties();
+        while (properties.hasNext()) {
+            String name = properties.next().getName();
+            if (!codec.getPropertyNames().contains(name)) {
+                Log.w(Const.LOG_TAG, "JSON codec for " + codec.getType().getSimpleName() +
+                        " doesn't support property " + name + ", using default deserializer for it");
+            }
+        }
+    }
+
+    // If a property has been added to the model but not to its codec, the codec would silently drop it,
+    // so the default serializer is used
+    private static boolean isCompatible(JsonCodec<?> codec, JsonSerializer<?> serializer) {
+        if (!(serializer instanceof BeanSerializerBase)) {
+            return true;
+        }
+        Iterator<PropertyWriter> properties = ((BeanSerializerBase) serializer).properties();
+        while (properties.hasNext()) {
+            String name = properties.next().getName();
+            if (!codec.getPropertyNames().contains(name)) {
+                Log.w(Const.LOG_TAG, "JSON codec for " + codec.getType().getSimpleName() +
+                        " doesn't support property " + name + ", using default serializer");
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.hmdm.launcher.json.RemoteFile;
+
+import java.io.IOException;
+
+public class RemoteFileCodec extends JsonCodec<RemoteFile> {
+
+    private static final SerializedString LAST_UPDATE = new SerializedString("lastUpdate");
+    private static final SerializedString URL = new SerializedString("url");
+    private static final SerializedString CHECKSUM = new SerializedString("checksum");
+    private static final SerializedString REMOVE = new SerializedString("remove");
+    private static final SerializedString PATH = new SerializedString("path");
+    private static final SerializedString DESCRIPTION = new SerializedString("description");
+    private static final SerializedString VAR_CONTENT = new SerializedString("varContent");
+
+    public RemoteFileCodec() {
+        super(RemoteFile.class, LAST_UPDATE, URL, CHECKSUM, REMOVE, PATH, DESCRIPTION, VAR_CONTENT);
+    }
+
+    @Override
+    protected RemoteFile create() {
+        return new RemoteFile();
+    }
+
+    @Override
+    protected boolean readProperty(JsonParser p, DeserializationContext ctxt, RemoteFile value, String name) throws IOException {
+        switch (name) {
+            case "lastUpdate":
+                value.setLastUpdate(readLong(p, ctxt));
+                return true;
+            case "url":
+                value.setUrl(readString(p, ctxt));
+                return true;
+            case "checksum":
+                value.setChecksum(readString(p, ctxt));
+                return true;
+            case "remove":
+                value.setRemove(readBoolean(p, ctxt));
+                return true;
+            case "path":
+                value.setPath(readString(p, ctxt));
+                return true;
+            case "description":
+                value.setDescription(readString(p, ctxt));
+                return true;
+            case "varContent":
+                value.setVarContent(readBoolean(p, ctxt));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeProperties(JsonGenerator gen, RemoteFile value) throws IOException {
+        writeLong(gen, LAST_UPDATE, value.getLastUpdate());
+        writeString(gen, URL, value.getUrl());
+        writeString(gen, CHECKSUM, value.getChecksum());
+        writeBoolean(gen, REMOVE, value.isRemove());
+        writeString(gen, PATH, value.getPath());
+        writeString(gen, DESCRIPTION, value.getDescription());
+        writeBoolean(gen, VAR_CONTENT, value.isVarContent());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.hmdm.launcher.json.RemoteLogItem;
+
+import java.io.IOException;
+
+public class RemoteLogItemCodec extends JsonCodec<RemoteLogItem> {
+
+    private static final SerializedString TIMESTAMP = new SerializedString("timestamp");
+    private static final SerializedString LOG_LEVEL = new SerializedString("logLevel");
+    private static final SerializedString PACKAGE_ID = new SerializedString("packageId");
+    private static final SerializedString MESSAGE = new SerializedString("message");
+
+    public RemoteLogItemCodec() {
+        super(RemoteLogItem.class, TIMESTAMP, LOG_LEVEL, PACKAGE_ID, MESSAGE);
+    }
+
+    @Override
+    protected RemoteLogItem create() {
+        return new RemoteLogItem();
+    }
+
+    @Override
+    protected boolean readProperty(JsonParser p, DeserializationContext ctxt, RemoteLogItem value, String name) throws IOException {
+        switch (name) {
+            case "timestamp":
+                value.setTimestamp(readLong(p, ctxt));
+                return true;
+            case "logLevel":
+                value.setLogLevel(readInt(p, ctxt));
+                return true;
+            case "packageId":
+                value.setPackageId(readString(p, ctxt));
+                return true;
+            case "message":
+                value.setMessage(readString(p, ctxt));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void writeProperties(JsonGenerator gen, RemoteLogItem value) throws IOException {
+        writeLong(gen, TIMESTAMP, value.getTimestamp());
+        writeInt(gen, LOG_LEVEL, value.getLogLevel());
+        writeString(gen, PACKAGE_ID, value.getPackageId());
+        writeString(gen, MESSAGE, value.getMessage());
+    }
+}
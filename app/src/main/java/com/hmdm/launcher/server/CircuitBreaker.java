@@ -0,0 +1,200 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.hmdm.launcher.Const;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Stops sending requests to an overloaded or unavailable server.
+ * The circuit opens after several consecutive failures or immediately on 429 / 503 responses.
+ * Only the failures of the server count: 5xx responses and the errors after the connection has been made.
+ * Errors of connecting, such as a missing network on the device, don't open the circuit.
+ * While it's open, all requests to the server fail without using the network.
+ * The open period is taken from the Retry-After header, or grows exponentially with a random jitter
+ * so the devices don't return to the server at the same time.
+ * After the open period, one probe request is allowed: its success closes the circuit.
+ */
+public class CircuitBreaker {
+
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    // Consecutive failures opening the circuit
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long MIN_BACKOFF_MS = 5000;
+    private static final long MAX_BACKOFF_MS = 10 * 60000;
+    private static final long MAX_RETRY_AFTER_MS = 60 * 60000;
+
+    private final String name;
+    private final Random random = new Random();
+    // Set by the network interceptor when the connection to the server has been made
+    private final ThreadLocal<Boolean> connected = new ThreadLocal<>();
+    private int consecutiveFailures;
+    // Number of times the circuit has been opened since it was closed, used for the exponential backoff
+    private int openCount;
+    private long openUntil;
+    private boolean probing;
+
+    public CircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    public synchronized boolean isOpen() {
+        return SystemClock.elapsedRealtime() < openUntil;
+    }
+
+    // Time remaining until the next request is allowed, 0 if the circuit is closed
+    public synchronized long getRetryDelay() {
+        return Math.max(0, openUntil - SystemClock.elapsedRealtime());
+    }
+
+    private synchronized void beforeRequest() throws CircuitOpenException {
+        if (isOpen()) {
+            throw new CircuitOpenException("Server " + name + " is unavailable, retry in " + getRetryDelay() + "ms");
+        }
+        if (openCount > 0) {
+            // Half-open: only one probe request at a time
+            if (probing) {
+                throw new CircuitOpenException("Server " + name + " is being probed");
+            }
+            probing = true;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (openCount > 0) {
+            Log.i(Const.LOG_TAG, "Server " + name + " is available again");
+        }
+        consecutiveFailures = 0;
+        openCount = 0;
+        openUntil = 0;
+        probing = false;
+    }
+
+    // The request didn't reach the server
+    private synchronized void onNotConnected() {
+        probing = false;
+    }
+
+    // Negative retryAfterMs means there's no Retry-After header
+    private synchronized void onFailure(boolean overloaded, long retryAfterMs) {
+        consecutiveFailures++;
+        probing = false;
+        if (!overloaded && consecutiveFailures < FAILURE_THRESHOLD && openCount == 0) {
+            return;
+        }
+        long delay;
+        if (retryAfterMs >= 0) {
+            // Up to 10% of jitter for the fleet not to come back at once
+            delay = Math.min(retryAfterMs, MAX_RETRY_AFTER_MS);
+            delay += (long)(random.nextDouble() * delay / 10);
+        } else {
+            long backoff = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(openCount, 16));
+            delay = backoff / 2 + (long)(random.nextDouble() * backoff / 2);
+        }
+        openCount++;
+        openUntil = SystemClock.elapsedRealtime() + delay;
+        Log.w(Const.LOG_TAG, "Server " + name + " failed " + consecutiveFailures + " times, pausing requests for " + delay + "ms");
+    }
+
+    // Returns -1 if the header is missing or invalid
+    private static long parseRetryAfter(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // HTTP date, RFC 1123: Sun, 06 Nov 1994 08:49:37 GMT
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                Date date = format.parse(value.trim());
+                return Math.max(0, date.getTime() - System.currentTimeMillis());
+            } catch (ParseException pe) {
+                return -1;
+            }
+        }
+    }
+
+    public Interceptor createInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                beforeRequest();
+                connected.set(false);
+                Response response;
+                try {
+                    response = chain.proceed(chain.request());
+                } catch (IOException e) {
+                    if (Boolean.TRUE.equals(connected.get())) {
+                        onFailure(false, -1);
+                    } else {
+                        onNotConnected();
+                    }
+                    throw e;
+                } catch (RuntimeException e) {
+                    // Don't leave the circuit in the probing state
+                    onFailure(false, -1);
+                    throw e;
+                }
+                int code = response.code();
+                if (code == 429 || code == 503) {
+                    onFailure(true, parseRetryAfter(response));
+                } else if (code >= 500) {
+                    onFailure(false, -1);
+                } else {
+                    onSuccess();
+                }
+                return response;
+            }
+        };
+    }
+
+    // Must be added as a network interceptor to the client having the interceptor of createInterceptor()
+    public Interceptor createNetworkInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                // Called in the thread of the application interceptor, after the connection has been made
+                connected.set(true);
+                return chain.proceed(chain.request());
+            }
+        };
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.hmdm.launcher.BuildConfig;
+import com.hmdm.launcher.Const;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Compresses the bodies of the upload requests (logs, device info) by gzip, if enabled by
+ * COMPRESS_REQUESTS, and counts the transferred bytes of the endpoints marked by ServerService.ENDPOINT_HEADER.
+ * A server advertises accepted request encodings by the Accept-Encoding response header (RFC 7694).
+ * If the server rejects a compressed request (415, or 400 naming Content-Encoding), the request is repeated uncompressed
+ * and the server isn't sent compressed requests for a while.
+ * Compressed responses are accepted by OkHttp itself: it requests gzip and decodes the response.
+ */
+class CompressionInterceptor implements Interceptor {
+    // Compression of smaller bodies doesn't pay off
+    private static final long MIN_COMPRESS_SIZE = 1024;
+    // The server not supporting compression is probed again after this period
+    private static final long UNSUPPORTED_PERIOD_MS = 24 * 3600000L;
+    // Part of the 400 response read to find the cause
+    private static final long MAX_ERROR_BODY_SIZE = 4096;
+
+    // Host -> time until which compression is not used
+    private static final Map<String, Long> unsupportedHosts = new HashMap<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = request.header(ServerService.ENDPOINT_HEADER);
+        if (endpoint == null) {
+            return chain.proceed(request);
+        }
+        RequestBody body = request.body();
+        String host = request.url().host();
+        long size = body != null ? body.contentLength() : 0;
+        if (!BuildConfig.COMPRESS_REQUESTS || size < MIN_COMPRESS_SIZE || !isSupported(host)) {
+            TransferMetrics.addRequest(endpoint, Math.max(size, 0), Math.max(size, 0));
+            return countResponse(endpoint, checkSupport(host, chain.proceed(request)));
+        }
+
+        Buffer compressed = new Buffer();
+        BufferedSink sink = Okio.buffer(new GzipSink(compressed));
+        body.writeTo(sink);
+        sink.close();
+        final long compressedSize = compressed.size();
+        final MediaType contentType = body.contentType();
+        final Buffer content = compressed;
+        RequestBody compressedBody = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return compressedSize;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.write(content.clone(), compressedSize);
+            }
+        };
+        Request compressedRequest = request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), compressedBody)
+                .build();
+        TransferMetrics.addRequest(endpoint, size, compressedSize);
+
+        Response response = chain.proceed(compressedRequest);
+        if (isCompressionRejected(response)) {
+            Log.w(Const.LOG_TAG, "Server " + host + " rejected a compressed request, sending uncompressed");
+            synchronized (unsupportedHosts) {
+                unsupportedHosts.put(host, SystemClock.elapsedRealtime() + UNSUPPORTED_PERIOD_MS);
+            }
+            response.close();
+            TransferMetrics.addRequest(endpoint, size, size);
+            response = chain.proceed(request);
+        }
+        return countResponse(endpoint, checkSupport(host, response));
+    }
+
+    // 415 is the standard response to an unsupported Content-Encoding. Some servers respond with 400,
+    // so it's treated as a rejection only if the error names the header: other 400s are real request errors
+    private static boolean isCompressionRejected(Response response) throws IOException {
+        if (response.code() == 415) {
+            return true;
+        }
+        if (response.code() != 400) {
+            return false;
+        }
+        String message = response.message() + " " + response.peekBody(MAX_ERROR_BODY_SIZE).string();
+        return message.toLowerCase(Locale.US).contains("content-encoding");
+    }
+
+    private static boolean isSupported(String host) {
+        synchronized (unsupportedHosts) {
+            Long until = unsupportedHosts.get(host);
+            return until == null || SystemClock.elapsedRealtime() >= until;
+        }
+    }
+
+    private static Response checkSupport(String host, Response response) {
+        String acceptEncoding = response.header("Accept-Encoding");
+        if (acceptEncoding != null) {
+            synchronized (unsupportedHosts) {
+                if (acceptEncoding.toLowerCase().contains("gzip")) {
+                    unsupportedHosts.remove(host);
+                } else {
+                    unsupportedHosts.put(host, SystemClock.elapsedRealtime() + UNSUPPORTED_PERIOD_MS);
+                }
+            }
+        }
+        return response;
+    }
+
+    // Decoded response bytes, counted while the body is read
+    private static Response countResponse(final String endpoint, Response response) {
+        return response.newBuilder()
+                .body(countingBody(response.body(), bytes -> TransferMetrics.addResponseBytes(endpoint, bytes)))
+                .build();
+    }
+
+    // Response bytes on the wire, counted before OkHttp decodes them. Must be a network interceptor
+    // which also removes the endpoint header from the request
+    static Interceptor createNetworkInterceptor() {
+        return chain -> {
+            Request request = chain.request();
+            final String endpoint = request.header(ServerService.ENDPOINT_HEADER);
+            if (endpoint == null) {
+                return chain.proceed(request);
+            }
+            Response response = chain.proceed(request.newBuilder().removeHeader(ServerService.ENDPOINT_HEADER).build());
+            return response.newBuilder()
+                    .body(countingBody(response.body(), bytes -> TransferMetrics.addResponseWireBytes(endpoint, bytes)))
+                    .build();
+        };
+    }
+
+    private interface ByteCounter {
+        void add(long bytes);
+    }
+
+    private static ResponseBody countingBody(final ResponseBody body, final ByteCounter counter) {
+        if (body == null) {
+            return null;
+        }
+        Source source = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    counter.add(read);
+                }
+                return read;
+            }
+        };
+        final BufferedSource bufferedSource = Okio.buffer(source);
+        return new ResponseBody() {
+            @Override
+            public MediaType contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() {
+                return body.contentLength();
+            }
+
+            @Override
+            public BufferedSource source() {
+                return bufferedSource;
+            }
+        };
+    }
+}
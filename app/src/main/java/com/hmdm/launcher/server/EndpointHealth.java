@@ -0,0 +1,131 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import android.os.SystemClock;
+
+import com.hmdm.launcher.Const;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Latency and error rate of the recent requests to a server.
+ */
+public class EndpointHealth {
+    // Number of latency samples used to calculate percentiles
+    private static final int SAMPLES = 32;
+    // Weight of the last request in the error rate
+    private static final float ERROR_WEIGHT = 0.2f;
+    // Endpoint is considered degraded if the error rate is above this value
+    private static final float DEGRADED_ERROR_RATE = 0.5f;
+    // Statistics older than this period are ignored, so a degraded endpoint is retried
+    private static final long STALE_PERIOD_MS = 60000;
+
+    private final String baseUrl;
+    private final CircuitBreaker circuitBreaker;
+    private final long[] latencies = new long[SAMPLES];
+    private int count;
+    private int next;
+    private float errorRate;
+    private long lastRequestTime;
+
+    public EndpointHealth(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.circuitBreaker = new CircuitBreaker(baseUrl);
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public synchronized void onRequestComplete(long latencyMs, boolean success) {
+        latencies[next] = latencyMs;
+        next = (next + 1) % SAMPLES;
+        if (count < SAMPLES) {
+            count++;
+        }
+        errorRate += ERROR_WEIGHT * ((success ? 0f : 1f) - errorRate);
+        lastRequestTime = SystemClock.elapsedRealtime();
+    }
+
+    private boolean isKnown() {
+        return count > 0 && SystemClock.elapsedRealtime() - lastRequestTime < STALE_PERIOD_MS;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public synchronized float getErrorRate() {
+        return isKnown() ? errorRate : 0f;
+    }
+
+    public synchronized boolean isDegraded() {
+        return circuitBreaker.isOpen() || (isKnown() && errorRate >= DEGRADED_ERROR_RATE);
+    }
+
+    // Returns -1 if there are no recent requests
+    public synchronized long getLatencyPercentile(int percent) {
+        if (!isKnown()) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, count * percent / 100)];
+    }
+
+    // Expected time of a request: a failed request costs the connection timeout.
+    // Returns -1 if there are no recent requests
+    public synchronized long getExpectedLatency() {
+        long median = getLatencyPercentile(50);
+        if (median < 0) {
+            return -1;
+        }
+        return median + (long)(errorRate * Const.CONNECTION_TIMEOUT);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return baseUrl + ": p50=" + getLatencyPercentile(50) + "ms, p95=" + getLatencyPercentile(95) +
+                "ms, errors=" + Math.round(getErrorRate() * 100) + "%";
+    }
+
+    // Records the result of each request; server errors (5xx) are counted as failures
+    public Interceptor createInterceptor() {
+        return new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    Response response = chain.proceed(chain.request());
+                    onRequestComplete(SystemClock.elapsedRealtime() - start, response.code() < 500);
+                    return response;
+                } catch (IOException e) {
+                    onRequestComplete(SystemClock.elapsedRealtime() - start, false);
+                    throw e;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import com.hmdm.launcher.json.ServerEndpoint;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Consistent hash ring of the server nodes.
+ * Each node gets a number of points on the ring proportional to its weight;
+ * a device is served by the first node following the hash of its ID,
+ * and falls over to the next nodes on the ring.
+ * Adding or removing a node moves only the devices of the nearest ring segments.
+ */
+public class HashRing {
+    // Virtual nodes per weight unit, enough to make the shares close to the weights
+    private static final int POINTS_PER_WEIGHT = 100;
+    private static final int MAX_WEIGHT = 100;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    public HashRing(List<ServerEndpoint> endpoints) {
+        for (ServerEndpoint endpoint : endpoints) {
+            if (endpoint.getUrl() == null || HttpUrl.parse(endpoint.getUrl()) == null) {
+                continue;
+            }
+            int weight = endpoint.getWeight() != null ? endpoint.getWeight() : ServerEndpoint.DEFAULT_WEIGHT;
+            weight = Math.min(weight, MAX_WEIGHT);
+            for (int i = 0; i < weight * POINTS_PER_WEIGHT; i++) {
+                ring.put(hash(endpoint.getUrl() + "#" + i), endpoint.getUrl());
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    // Node URLs in the failover order for the key, the home node goes first
+    public List<String> getNodes(String key) {
+        long hash = hash(key);
+        Set<String> nodes = new LinkedHashSet<>();
+        for (String node : ring.tailMap(hash).values()) {
+            nodes.add(node);
+        }
+        for (String node : ring.headMap(hash).values()) {
+            nodes.add(node);
+        }
+        return new ArrayList<>(nodes);
+    }
+
+    // First 8 bytes of MD5, well distributed and stable across platforms
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (digest[i] & 0xff);
+            }
+            return result;
+        } catch (Exception e) {
+            // MD5 and UTF-8 are always available
+            return key.hashCode();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.hmdm.launcher.BuildConfig;
+import com.hmdm.launcher.Const;
+import com.hmdm.launcher.task.TaskLanes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * If a GET request to the server takes longer than the 95th percentile of its recent latency,
+ * sends the same request to the other server and uses the first successful response.
+ * Only GET requests are hedged because they can be safely repeated.
+ */
+class HedgingInterceptor implements Interceptor {
+    // Bounds of the delay before sending the hedged request
+    private static final long MIN_HEDGE_DELAY_MS = 200;
+    private static final long MAX_HEDGE_DELAY_MS = Const.CONNECTION_TIMEOUT / 2;
+
+    private final EndpointHealth health;
+    private final EndpointHealth otherHealth;
+    private final OkHttpClient otherClient;
+
+    HedgingInterceptor(EndpointHealth health, EndpointHealth otherHealth, OkHttpClient otherClient) {
+        this.health = health;
+        this.otherHealth = otherHealth;
+        this.otherClient = otherClient;
+    }
+
+    @Override
+    public Response intercept(final Chain chain) throws IOException {
+        final Request request = chain.request();
+        long delay = health.getLatencyPercentile(95);
+        if (!BuildConfig.HEDGE_REQUESTS || !"GET".equals(request.method()) || delay < 0 || otherHealth.isDegraded()) {
+            return chain.proceed(request);
+        }
+        final Request hedgedRequest = rewriteRequest(request);
+        if (hedgedRequest == null) {
+            return chain.proceed(request);
+        }
+        delay = Math.max(MIN_HEDGE_DELAY_MS, Math.min(MAX_HEDGE_DELAY_MS, delay));
+
+        Attempts attempts = new Attempts();
+        attempts.start(() -> chain.proceed(request));
+        try {
+            Object first = attempts.poll(delay);
+            if (first != null) {
+                return getResponse(first);
+            }
+            Log.i(Const.LOG_TAG, "Hedging request " + request.url().encodedPath() + " to " + otherHealth.getBaseUrl());
+            attempts.start(() -> otherClient.newCall(hedgedRequest).execute());
+
+            Response fallback = null;
+            IOException error = null;
+            for (int pending = 2; pending > 0; pending--) {
+                Response response;
+                try {
+                    response = getResponse(attempts.take());
+                } catch (IOException e) {
+                    error = e;
+                    continue;
+                }
+                if (response.code() < 500 || pending == 1) {
+                    if (fallback != null) {
+                        fallback.close();
+                    }
+                    return response;
+                }
+                // Server error, wait for the other server
+                fallback = response;
+            }
+            if (fallback != null) {
+                return fallback;
+            }
+            throw error;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            attempts.finish();
+        }
+    }
+
+    // Replaces the base URL of this server by the base URL of the other server
+    private Request rewriteRequest(Request request) {
+        String url = request.url().toString();
+        String baseUrl = stripSlash(health.getBaseUrl());
+        if (!url.startsWith(baseUrl)) {
+            return null;
+        }
+        HttpUrl otherUrl = HttpUrl.parse(stripSlash(otherHealth.getBaseUrl()) + url.substring(baseUrl.length()));
+        if (otherUrl == null) {
+            return null;
+        }
+        return request.newBuilder().url(otherUrl).build();
+    }
+
+    private static String stripSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private static Response getResponse(Object result) throws IOException {
+        if (result instanceof IOException) {
+            throw (IOException)result;
+        }
+        return (Response)result;
+    }
+
+    private interface Attempt {
+        Response execute() throws IOException;
+    }
+
+    // Results (responses or errors) of the original and hedged requests, in the order of completion.
+    // The losing requests can't be cancelled, so their responses are closed when they are done
+    private static class Attempts {
+        private final LinkedList<Object> results = new LinkedList<>();
+        private boolean finished;
+
+        void start(final Attempt attempt) {
+            TaskLanes.HEDGE.execute(() -> {
+                Object result;
+                try {
+                    result = attempt.execute();
+                } catch (IOException e) {
+                    result = e;
+                } catch (RuntimeException e) {
+                    result = new IOException(e);
+                }
+                add(result);
+            });
+        }
+
+        private synchronized void add(Object result) {
+            if (finished) {
+                close(result);
+                return;
+            }
+            results.add(result);
+            notifyAll();
+        }
+
+        // Returns null if there's no result in time
+        synchronized Object poll(long timeoutMs) throws InterruptedException {
+            long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+            while (results.isEmpty()) {
+                long waitMs = deadline - SystemClock.elapsedRealtime();
+                if (waitMs <= 0) {
+                    return null;
+                }
+                wait(waitMs);
+            }
+            return results.removeFirst();
+        }
+
+        synchronized Object take() throws InterruptedException {
+            while (results.isEmpty()) {
+                wait();
+            }
+            return results.removeFirst();
+        }
+
+        // Closes the results which have not been taken
+        synchronized void finish() {
+            finished = true;
+            for (Object result : results) {
+                close(result);
+            }
+            results.clear();
+        }
+
+        private static void close(Object result) {
+            if (result instanceof Response) {
+                ((Response)result).close();
+            }
+        }
+    }
+}
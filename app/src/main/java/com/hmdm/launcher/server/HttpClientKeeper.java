@@ -0,0 +1,200 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.hmdm.launcher.BuildConfig;
+import com.hmdm.launcher.Const;
+import com.hmdm.launcher.util.InstallUtils;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+/**
+ * Keeps the HTTP client shared by the server API, image loading and downloads,
+ * so they reuse the connections, TLS sessions and DNS lookups.
+ * Clients with additional settings must be derived from it by newBuilder().
+ */
+public class HttpClientKeeper {
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final long DNS_CACHE_TTL_MS = 5 * 60000;
+
+    private static OkHttpClient client;
+    private static OkHttpClient picassoClient;
+
+    // Connection statistics
+    private static final AtomicLong newConnections = new AtomicLong();
+    private static final AtomicLong reusedConnections = new AtomicLong();
+    private static final AtomicLong tlsHandshakes = new AtomicLong();
+    // Time spent on DNS lookups, connecting and TLS handshakes of the new connections
+    private static final AtomicLong connectTimeMs = new AtomicLong();
+    private static final AtomicLong dnsLookups = new AtomicLong();
+    private static final AtomicLong dnsCacheHits = new AtomicLong();
+
+    // Connections which have already been used, to detect the new ones
+    private static final Map<Connection, Boolean> knownConnections = new WeakHashMap<>();
+    // Start time of the request in the current thread
+    private static final ThreadLocal<Long> requestStartTime = new ThreadLocal<>();
+
+    public static synchronized OkHttpClient getClient() {
+        if (client == null) {
+            client = createClient();
+        }
+        return client;
+    }
+
+    // Client with the disk cache for Picasso
+    public static synchronized OkHttpClient getPicassoClient(Context context) {
+        if (picassoClient == null) {
+            // Same directory and size as the default Picasso downloader to keep the cached images
+            File cacheDir = new File(context.getApplicationContext().getCacheDir(), "picasso-cache");
+            picassoClient = getClient().newBuilder()
+                    .cache(new Cache(cacheDir, Integer.MAX_VALUE))
+                    .build();
+        }
+        return picassoClient;
+    }
+
+    public static String getStatistics() {
+        return "connections: new=" + newConnections.get() + ", reused=" + reusedConnections.get() +
+                ", tls=" + tlsHandshakes.get() + ", connectTimeMs=" + connectTimeMs.get() +
+                "; dns: lookups=" + dnsLookups.get() + ", cached=" + dnsCacheHits.get();
+    }
+
+    public static long getNewConnections() {
+        return newConnections.get();
+    }
+
+    public static long getReusedConnections() {
+        return reusedConnections.get();
+    }
+
+    public static long getConnectTimeMs() {
+        return connectTimeMs.get();
+    }
+
+    private static OkHttpClient createClient() {
+        OkHttpClient.Builder builder;
+        if (BuildConfig.TRUST_ANY_CERTIFICATE) {
+            builder = UnsafeOkHttpClient.getUnsafeOkHttpClient().newBuilder();
+        } else {
+            builder = new OkHttpClient.Builder().
+                    connectTimeout( Const.CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS ).
+                    readTimeout( Const.CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS ).
+                    writeTimeout( Const.CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS );
+        }
+        builder.connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(new Dispatcher())
+                .dns(new CachingDns());
+
+        builder.addInterceptor(chain -> {
+            requestStartTime.set(SystemClock.elapsedRealtime());
+            Request request = chain.request();
+            if (BuildConfig.CHECK_SIGNATURE) {
+                String signature = InstallUtils.getRequestSignature(request.url().toString());
+                if (signature != null) {
+                    request = request.newBuilder().header("X-Request-Signature", signature).build();
+                }
+            }
+            return chain.proceed(request);
+        });
+
+        // Network interceptors are called when the connection is established
+        builder.addNetworkInterceptor(chain -> {
+            Connection connection = chain.connection();
+            boolean isNew;
+            synchronized (knownConnections) {
+                isNew = connection != null && knownConnections.put(connection, Boolean.TRUE) == null;
+            }
+            if (isNew) {
+                newConnections.incrementAndGet();
+                if (connection.handshake() != null) {
+                    tlsHandshakes.incrementAndGet();
+                }
+                Long startTime = requestStartTime.get();
+                if (startTime != null) {
+                    connectTimeMs.addAndGet(SystemClock.elapsedRealtime() - startTime);
+                }
+            } else {
+                reusedConnections.incrementAndGet();
+            }
+            return chain.proceed(chain.request());
+        });
+
+        return builder.build();
+    }
+
+    // Caches the resolved addresses; if the DNS server fails, the expired addresses are used
+    private static class CachingDns implements Dns {
+        private static class Entry {
+            List<InetAddress> addresses;
+            long expiry;
+        }
+
+        private final Map<String, Entry> cache = new HashMap<>();
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            Entry entry;
+            synchronized (cache) {
+                entry = cache.get(hostname);
+            }
+            if (entry != null && SystemClock.elapsedRealtime() < entry.expiry) {
+                dnsCacheHits.incrementAndGet();
+                return entry.addresses;
+            }
+            dnsLookups.incrementAndGet();
+            List<InetAddress> addresses;
+            try {
+                addresses = Dns.SYSTEM.lookup(hostname);
+            } catch (UnknownHostException e) {
+                if (entry != null) {
+                    return entry.addresses;
+                }
+                throw e;
+            }
+            Entry newEntry = new Entry();
+            newEntry.addresses = addresses;
+            newEntry.expiry = SystemClock.elapsedRealtime() + DNS_CACHE_TTL_MS;
+            synchronized (cache) {
+                cache.put(hostname, newEntry);
+            }
+            return addresses;
+        }
+    }
+}
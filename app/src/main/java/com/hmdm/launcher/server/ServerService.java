@@ -27,7 +27,10 @@ import com.hmdm.launcher.json.DeviceInfo;
 import com.hmdm.launcher.json.PushResponse;
 import com.hmdm.launcher.json.RemoteLogConfigResponse;
 import com.hmdm.launcher.json.RemoteLogItem;
+import com.hmdm.launcher.json.ServerConfigPatchResponse;
 import com.hmdm.launcher.json.ServerConfigResponse;
+import com.hmdm.launcher.json.SyncRequest;
+import com.hmdm.launcher.json.SyncResponse;
 
 import java.util.List;
 
@@ -45,6 +48,9 @@ public interface ServerService {
 
     static final String REQUEST_SIGNATURE_HEADER = "X-Request-Signature";
     static final String CPU_ARCH_HEADER = "X-CPU-Arch";
+    static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    // Name of the endpoint in the transfer statistics; bodies of the named requests may be compressed
+    static final String ENDPOINT_HEADER = "X-Endpoint";
 
     @POST("{project}/rest/public/sync/configuration/{number}")
     Call<ResponseBody> createAndGetRawServerConfig(@Path("project") String project,
@@ -54,10 +60,12 @@ public interface ServerService {
                                                    @Body DeviceCreateOptions createOptions);
 
     @GET("{project}/rest/public/sync/configuration/{number}")
+    @Headers(ENDPOINT_HEADER + ": config")
     Call<ResponseBody> getRawServerConfig(@Path("project") String project,
                                           @Path("number") String number,
                                           @Header(REQUEST_SIGNATURE_HEADER) String signature,
-                                          @Header(CPU_ARCH_HEADER) String cpuArch);
+                                          @Header(CPU_ARCH_HEADER) String cpuArch,
+                                          @Header(IF_NONE_MATCH_HEADER) String configETag);
 
     @POST("{project}/rest/public/sync/configuration/{number}")
     Call<ServerConfigResponse> createAndGetServerConfig(@Path("project") String project,
@@ -67,27 +75,44 @@ public interface ServerService {
                                                         @Body DeviceCreateOptions createOptions);
 
     @GET("{project}/rest/public/sync/configuration/{number}")
+    @Headers(ENDPOINT_HEADER + ": config")
     Call<ServerConfigResponse> getServerConfig(@Path("project") String project,
                                                @Path("number") String number,
                                                @Header(REQUEST_SIGNATURE_HEADER) String signature,
-                                               @Header(CPU_ARCH_HEADER) String cpuArch);
+                                               @Header(CPU_ARCH_HEADER) String cpuArch,
+                                               @Header(IF_NONE_MATCH_HEADER) String configETag);
+
+    @GET("{project}/rest/public/sync/configuration/{number}/changes/{revision}")
+    @Headers(ENDPOINT_HEADER + ": configPatch")
+    Call<ServerConfigPatchResponse> getServerConfigPatch(@Path("project") String project,
+                                                         @Path("number") String number,
+                                                         @Path("revision") long revision,
+                                                         @Header(REQUEST_SIGNATURE_HEADER) String signature,
+                                                         @Header(CPU_ARCH_HEADER) String cpuArch,
+                                                         @Header(IF_NONE_MATCH_HEADER) String configETag);
 
     @POST("{project}/rest/public/sync/info")
-    @Headers("Content-Type: application/json")
+    @Headers({"Content-Type: application/json", ENDPOINT_HEADER + ": info"})
     Call<ResponseBody> sendDevice(@Path("project") String project, @Body DeviceInfo deviceInfo);
 
     @GET("{project}/rest/notifications/device/{number}")
+    @Headers(ENDPOINT_HEADER + ": push")
     Call<PushResponse> queryPushNotifications(@Path("project") String project, @Path("number") String number);
 
+    // Combined logs, device info and push query; returns 404 if the server doesn't support it
+    @POST("{project}/rest/public/sync/heartbeat/{number}")
+    @Headers({"Content-Type: application/json", ENDPOINT_HEADER + ": sync"})
+    Call<SyncResponse> sync(@Path("project") String project, @Path("number") String number, @Body SyncRequest request);
+
     @GET( "{project}/rest/plugins/devicelog/log/rules/{number}" )
     Call<RemoteLogConfigResponse> getRemoteLogConfig(@Path("project") String project, @Path("number") String number);
 
     @POST("{project}/rest/plugins/devicelog/log/list/{number}")
-    @Headers("Content-Type: application/json")
+    @Headers({"Content-Type: application/json", ENDPOINT_HEADER + ": logs"})
     Call<ResponseBody> sendLogs(@Path("project") String project, @Path("number") String number, @Body List<RemoteLogItem> logItems);
 
     @PUT("{project}/rest/plugins/deviceinfo/deviceinfo/public/{number}")
-    @Headers("Content-Type: application/json")
+    @Headers({"Content-Type: application/json", ENDPOINT_HEADER + ": detailedInfo"})
     Call<ResponseBody> sendDetailedInfo(@Path("project") String project, @Path("number") String number, @Body List<DetailedInfo> infoItems);
 
     @GET( "{project}/rest/plugins/deviceinfo/deviceinfo-plugin-settings/device/{number}" )
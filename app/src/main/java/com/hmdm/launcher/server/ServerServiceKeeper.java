@@ -20,77 +20,245 @@
 package com.hmdm.launcher.server;
 
 import android.content.Context;
+import android.util.Log;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hmdm.launcher.BuildConfig;
 import com.hmdm.launcher.Const;
+import com.hmdm.launcher.helper.JsonHelper;
 import com.hmdm.launcher.helper.SettingsHelper;
+import com.hmdm.launcher.json.ServerEndpoint;
 
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 import retrofit2.converter.jackson.JacksonConverterFactory;
 
+/**
+ * Keeps the services of the primary and secondary servers.
+ * The latency and error rate of each server are tracked, and the healthier server
+ * is returned as the primary one, so the callers try it first.
+ * If the server provides the list of its nodes, the primary and secondary servers
+ * are the first healthy nodes on the hash ring, starting from the device ID.
+ */
 public class ServerServiceKeeper {
 
     private static ServerService serverServiceInstance;
     private static ServerService secondaryServerServiceInstance;
+    private static EndpointHealth serverHealth;
+    private static EndpointHealth secondaryServerHealth;
+    private static boolean secondaryPreferred;
+    // Server nodes in the failover order for this device, null if the nodes are not set by the server
+    private static List<String> nodes;
+    private static String nodesKey;
+
+    // Statistics are kept when the services are reset, so they're stored by the base URL
+    private static final Map<String, EndpointHealth> healthMap = new HashMap<>();
 
     // This is called after changing the server URL
-    public static void resetServices() {
+    public static synchronized void resetServices() {
         serverServiceInstance = null;
         secondaryServerServiceInstance = null;
+        serverHealth = null;
+        secondaryServerHealth = null;
+        secondaryPreferred = false;
+    }
+
+    // The services are selected under the lock, so they're not reset meanwhile by another thread
+    public static synchronized ServerService getServerServiceInstance(Context context) {
+        checkNodes(context);
+        initServices(context);
+        boolean preferred = isSecondaryPreferred();
+        if (preferred != secondaryPreferred) {
+            Log.w(Const.LOG_TAG, "Switching to the " + (preferred ? "secondary" : "primary") + " server, primary " +
+                    serverHealth + ", secondary " + secondaryServerHealth);
+            secondaryPreferred = preferred;
+        }
+        return secondaryPreferred ? secondaryServerServiceInstance : serverServiceInstance;
+    }
+
+    // Returns the server which is not returned by getServerServiceInstance()
+    public static synchronized ServerService getSecondaryServerServiceInstance(Context context) {
+        checkNodes(context);
+        initServices(context);
+        return secondaryPreferred ? serverServiceInstance : secondaryServerServiceInstance;
+    }
+
+    // Time until any of the servers accepts requests, 0 if a server is available now
+    public static synchronized long getRetryDelay() {
+        if (serverHealth == null) {
+            return 0;
+        }
+        return Math.min(serverHealth.getCircuitBreaker().getRetryDelay(),
+                secondaryServerHealth.getCircuitBreaker().getRetryDelay());
+    }
+
+    private static synchronized void initServices(Context context) {
+        if ( serverServiceInstance != null ) {
+            return;
+        }
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        String baseUrl = settingsHelper.getBaseUrl();
+        if (baseUrl == null || HttpUrl.parse(baseUrl) == null) {
+            // "Invalid URL". We must not be here but in the case we are here,
+            // avoid crash loop by replacing the URL to the default one
+            baseUrl = BuildConfig.BASE_URL;
+        }
+        String secondaryBaseUrl = settingsHelper.getSecondaryBaseUrl();
+        if (nodes != null) {
+            List<String> selected = selectNodes();
+            baseUrl = selected.get(0);
+            if (selected.size() > 1) {
+                secondaryBaseUrl = selected.get(1);
+            }
+            Log.i(Const.LOG_TAG, "Server nodes: " + baseUrl + ", " + secondaryBaseUrl);
+        }
+        serverHealth = getHealth(baseUrl);
+
+        if (secondaryBaseUrl == null || HttpUrl.parse(secondaryBaseUrl) == null || secondaryBaseUrl.equals(baseUrl)) {
+            // Here we can go if the secondary base URL is invalid or the same as the primary one
+            // In this case, just use the primary instance
+            secondaryServerHealth = serverHealth;
+            serverServiceInstance = createServerService(baseUrl, createClient(serverHealth));
+            secondaryServerServiceInstance = serverServiceInstance;
+            return;
+        }
+        secondaryServerHealth = getHealth(secondaryBaseUrl);
+
+        OkHttpClient client = createClient(serverHealth);
+        OkHttpClient secondaryClient = createClient(secondaryServerHealth);
+        serverServiceInstance = createServerService(baseUrl,
+                addHedging(client, new HedgingInterceptor(serverHealth, secondaryServerHealth, secondaryClient)));
+        secondaryServerServiceInstance = createServerService(secondaryBaseUrl,
+                addHedging(secondaryClient, new HedgingInterceptor(secondaryServerHealth, serverHealth, client)));
+    }
+
+    // Hedging goes before the circuit breaker and health interceptors, so the response
+    // of the other server is recorded by the client of the other server
+    private static OkHttpClient addHedging(OkHttpClient client, HedgingInterceptor hedgingInterceptor) {
+        OkHttpClient.Builder builder = client.newBuilder();
+        builder.interceptors().add(0, hedgingInterceptor);
+        return builder.build();
     }
 
-    public static ServerService getServerServiceInstance(Context context) {
-        if ( serverServiceInstance == null ) {
-            try {
-                serverServiceInstance = createServerService(SettingsHelper.getInstance(context).getBaseUrl());
-            } catch (Exception e) {
-                // "Invalid URL" exception. We must not be here but in the case we are here,
-                // avoid crash loop by replacing the URL to the default one
-                serverServiceInstance = createServerService(BuildConfig.BASE_URL);
+    // Rebuilds the services when the server nodes are changed,
+    // or when both selected nodes fail and there's another node on the ring
+    private static synchronized void checkNodes(Context context) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        List<ServerEndpoint> endpoints = settingsHelper.getServerEndpoints();
+        // The services are also rebuilt when the server URL is changed
+        StringBuilder sb = new StringBuilder(String.valueOf(settingsHelper.getDeviceId()))
+                .append(' ').append(settingsHelper.getBaseUrl())
+                .append(' ').append(settingsHelper.getSecondaryBaseUrl());
+        if (endpoints != null) {
+            for (ServerEndpoint endpoint : endpoints) {
+                sb.append(' ').append(endpoint.getUrl()).append(':').append(endpoint.getWeight());
+            }
+        }
+        String key = sb.toString();
+        if (!key.equals(nodesKey)) {
+            nodesKey = key;
+            nodes = null;
+            if (endpoints != null) {
+                HashRing ring = new HashRing(endpoints);
+                if (!ring.isEmpty()) {
+                    nodes = ring.getNodes(String.valueOf(settingsHelper.getDeviceId()));
+                }
+            }
+            resetServices();
+            return;
+        }
+        if (nodes != null && nodes.size() > 2 && serverHealth != null &&
+                serverHealth.isDegraded() && secondaryServerHealth.isDegraded()) {
+            for (String node : nodes) {
+                EndpointHealth health = getHealth(node);
+                if (health != serverHealth && health != secondaryServerHealth && !health.isDegraded()) {
+                    Log.w(Const.LOG_TAG, "Both server nodes are failing, switching to " + node);
+                    resetServices();
+                    return;
+                }
             }
         }
+    }
 
-        return serverServiceInstance;
+    // Healthy nodes go first, keeping the ring order
+    private static List<String> selectNodes() {
+        List<String> healthy = new ArrayList<>();
+        List<String> degraded = new ArrayList<>();
+        for (String node : nodes) {
+            if (getHealth(node).isDegraded()) {
+                degraded.add(node);
+            } else {
+                healthy.add(node);
+            }
+        }
+        healthy.addAll(degraded);
+        return healthy;
     }
 
-    public static ServerService getSecondaryServerServiceInstance(Context context) {
-        if ( secondaryServerServiceInstance == null ) {
-            try {
-                secondaryServerServiceInstance = createServerService(SettingsHelper.getInstance(context).getSecondaryBaseUrl());
-            } catch (Exception e) {
-                // Here we can go if the secondary base URL is invalid
-                // In this case, just return a copy of the primary instance
-                secondaryServerServiceInstance = getServerServiceInstance(context);
+    private static EndpointHealth getHealth(String baseUrl) {
+        synchronized (healthMap) {
+            EndpointHealth health = healthMap.get(baseUrl);
+            if (health == null) {
+                health = new EndpointHealth(baseUrl);
+                healthMap.put(baseUrl, health);
             }
+            return health;
+        }
+    }
+
+    // The secondary server is preferred if the primary one is failing or much slower.
+    // Without recent statistics, the primary server is preferred
+    private static boolean isSecondaryPreferred() {
+        if (serverHealth == secondaryServerHealth || secondaryServerHealth.isDegraded()) {
+            return false;
+        }
+        if (serverHealth.isDegraded()) {
+            return true;
+        }
+        long latency = serverHealth.getExpectedLatency();
+        long secondaryLatency = secondaryServerHealth.getExpectedLatency();
+        if (latency < 0 || secondaryLatency < 0) {
+            return false;
         }
+        // Hysteresis to avoid switching between the servers with similar latency
+        return secondaryPreferred ? secondaryLatency < latency * 2 : secondaryLatency * 2 < latency;
+    }
 
-        return secondaryServerServiceInstance;
+    private static OkHttpClient createClient(EndpointHealth health) {
+        return createClient().newBuilder()
+                .addInterceptor(health.getCircuitBreaker().createInterceptor())
+                .addInterceptor(health.createInterceptor())
+                .addNetworkInterceptor(health.getCircuitBreaker().createNetworkInterceptor())
+                .build();
     }
 
     // Made public for downloading from third party servers
     public static ServerService createServerService( String baseUrl ) {
-        return createBuilder( baseUrl ).build().create( ServerService.class );
+        return createServerService( baseUrl, createClient() );
+    }
+
+    private static ServerService createServerService( String baseUrl, OkHttpClient client ) {
+        return createBuilder( baseUrl ).client( client ).build().create( ServerService.class );
+    }
+
+    // All clients share the connection pool of the application client
+    private static OkHttpClient createClient() {
+        return HttpClientKeeper.getClient().newBuilder()
+                .addInterceptor(new CompressionInterceptor())
+                .addNetworkInterceptor(CompressionInterceptor.createNetworkInterceptor())
+                .build();
     }
 
     private static Retrofit.Builder createBuilder( String baseUrl ) {
         Retrofit.Builder builder = new Retrofit.Builder();
 
-        if (BuildConfig.TRUST_ANY_CERTIFICATE) {
-            builder.client(UnsafeOkHttpClient.getUnsafeOkHttpClient());
-        } else {
-            OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder().
-                    connectTimeout( Const.CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS ).
-                    readTimeout( Const.CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS ).
-                    writeTimeout( Const.CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS );
-            builder.client(clientBuilder.build());
-        }
-
         builder.baseUrl( baseUrl )
-                .addConverterFactory( JacksonConverterFactory.create( new ObjectMapper()) );
+                .addConverterFactory( JacksonConverterFactory.create( JsonHelper.getObjectMapper() ) );
 
         return builder;
     }
@@ -0,0 +1,152 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import com.hmdm.launcher.helper.CryptoHelper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates the signature of the "data" section of a server response while the response is being read,
+ * so the response body is not kept in memory.
+ * The signature is SHA-1 of the shared secret followed by all non-whitespace bytes of the response
+ * from the "data": marker to the end, except the last byte (closing bracket of the response object).
+ * This assumes the specific form of response body: {"status":"OK","message":null,"data":{...}}
+ */
+public class SignedDataInputStream extends FilterInputStream {
+
+    private static final byte[] DATA_MARKER = "\"data\":".getBytes();
+    private static final int[] DATA_MARKER_FALLBACK = createFallbackTable(DATA_MARKER);
+
+    private MessageDigest digest;
+    private int markerMatched;
+    private boolean dataFound;
+    // The last byte of the response must not be signed, so each byte is signed when the next one arrives
+    private int pendingByte = -1;
+    private boolean eof;
+
+    public SignedDataInputStream(InputStream in, String secret) throws NoSuchAlgorithmException {
+        super(in);
+        digest = MessageDigest.getInstance("SHA-1");
+        try {
+            digest.update(secret.getBytes("UTF-8"));
+        } catch (IOException e) {
+            // UTF-8 is always supported
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            eof = true;
+        } else {
+            process(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int count = in.read(buffer, offset, length);
+        if (count == -1) {
+            eof = true;
+        }
+        for (int n = 0; n < count; n++) {
+            process(buffer[offset + n] & 0xFF);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes must be signed as well
+        long skipped = 0;
+        while (skipped < n && read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Reads the rest of the stream and returns the signature (uppercase hex string),
+     * or null if the response doesn't contain data
+     */
+    public String getSignature() throws IOException {
+        byte[] buffer = new byte[4096];
+        while (!eof) {
+            read(buffer, 0, buffer.length);
+        }
+        if (!dataFound) {
+            return null;
+        }
+        return CryptoHelper.getHexString(digest.digest());
+    }
+
+    private void process(int b) {
+        if (dataFound) {
+            if (pendingByte != -1 && !isWhitespace(pendingByte)) {
+                digest.update((byte) pendingByte);
+            }
+            pendingByte = b;
+            return;
+        }
+
+        // Search for the data marker (Knuth-Morris-Pratt)
+        while (markerMatched > 0 && DATA_MARKER[markerMatched] != b) {
+            markerMatched = DATA_MARKER_FALLBACK[markerMatched - 1];
+        }
+        if (DATA_MARKER[markerMatched] == b) {
+            markerMatched++;
+        }
+        if (markerMatched == DATA_MARKER.length) {
+            dataFound = true;
+        }
+    }
+
+    // Same characters as \s in regular expressions
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    private static int[] createFallbackTable(byte[] pattern) {
+        int[] table = new int[pattern.length];
+        int matched = 0;
+        for (int n = 1; n < pattern.length; n++) {
+            while (matched > 0 && pattern[n] != pattern[matched]) {
+                matched = table[matched - 1];
+            }
+            if (pattern[n] == pattern[matched]) {
+                matched++;
+            }
+            table[n] = matched;
+        }
+        return table;
+    }
+}
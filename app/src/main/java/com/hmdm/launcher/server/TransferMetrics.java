@@ -0,0 +1,78 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bytes transferred by the server API endpoints, before and after compression.
+ */
+public class TransferMetrics {
+
+    private static class Counters {
+        long requests;
+        long requestBytes;
+        long requestWireBytes;
+        long responseBytes;
+        long responseWireBytes;
+    }
+
+    private static final Map<String, Counters> counters = new TreeMap<>();
+
+    private static Counters get(String endpoint) {
+        Counters c = counters.get(endpoint);
+        if (c == null) {
+            c = new Counters();
+            counters.put(endpoint, c);
+        }
+        return c;
+    }
+
+    public static synchronized void addRequest(String endpoint, long bytes, long wireBytes) {
+        Counters c = get(endpoint);
+        c.requests++;
+        c.requestBytes += bytes;
+        c.requestWireBytes += wireBytes;
+    }
+
+    public static synchronized void addResponseBytes(String endpoint, long bytes) {
+        get(endpoint).responseBytes += bytes;
+    }
+
+    public static synchronized void addResponseWireBytes(String endpoint, long wireBytes) {
+        get(endpoint).responseWireBytes += wireBytes;
+    }
+
+    // Format: endpoint: requests=N, sent=bytes/wire bytes, received=bytes/wire bytes
+    public static synchronized String getReport() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            Counters c = entry.getValue();
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(entry.getKey()).append(": requests=").append(c.requests)
+                    .append(", sent=").append(c.requestBytes).append("/").append(c.requestWireBytes)
+                    .append(", received=").append(c.responseBytes).append("/").append(c.responseWireBytes);
+        }
+        return sb.toString();
+    }
+}
@@ -31,6 +31,7 @@ import com.hmdm.IMdmApi;
 import com.hmdm.launcher.Const;
 import com.hmdm.launcher.helper.SettingsHelper;
 import com.hmdm.launcher.json.RemoteLogItem;
+import com.hmdm.launcher.json.ServerConfig;
 import com.hmdm.launcher.util.RemoteLogger;
 
 public class PluginApiService extends Service {
@@ -43,9 +44,12 @@ public class PluginApiService extends Service {
     public static final String KEY_CUSTOM_2 = "CUSTOM_2";
     public static final String KEY_CUSTOM_3 = "CUSTOM_3";
 
+    private SettingsHelper settingsHelper;
+
     @Override
     public void onCreate() {
         super.onCreate();
+        settingsHelper = SettingsHelper.getInstance(this);
     }
 
     @Nullable
@@ -58,8 +62,9 @@ public class PluginApiService extends Service {
 
         @Override
         public Bundle queryConfig() {
-            SettingsHelper settingsHelper = SettingsHelper.getInstance(PluginApiService.this);
-            if ( settingsHelper.getConfig() == null ) {
+            // Read the configuration once, it may be updated concurrently
+            ServerConfig config = settingsHelper.getConfig();
+            if ( config == null ) {
                 // This shouldn't happen!
                 return null;
             } else {
@@ -68,14 +73,14 @@ public class PluginApiService extends Service {
                 bundle.putString(KEY_SECONDARY_SERVER_HOST, settingsHelper.getSecondaryBaseUrl());
                 bundle.putString(KEY_SERVER_PATH, settingsHelper.getServerProject());
                 bundle.putString(KEY_DEVICE_ID, settingsHelper.getDeviceId());
-                if (settingsHelper.getConfig().getCustom1() != null) {
-                    bundle.putString(KEY_CUSTOM_1, settingsHelper.getConfig().getCustom1());
+                if (config.getCustom1() != null) {
+                    bundle.putString(KEY_CUSTOM_1, config.getCustom1());
                 }
-                if (settingsHelper.getConfig().getCustom2() != null) {
-                    bundle.putString(KEY_CUSTOM_2, settingsHelper.getConfig().getCustom2());
+                if (config.getCustom2() != null) {
+                    bundle.putString(KEY_CUSTOM_2, config.getCustom2());
                 }
-                if (settingsHelper.getConfig().getCustom3() != null) {
-                    bundle.putString(KEY_CUSTOM_3, settingsHelper.getConfig().getCustom3());
+                if (config.getCustom3() != null) {
+                    bundle.putString(KEY_CUSTOM_3, config.getCustom3());
                 }
                 return bundle;
             }
@@ -94,7 +99,6 @@ public class PluginApiService extends Service {
 
         @Override
         public String queryAppPreference(String packageId, String attr) {
-            SettingsHelper settingsHelper = SettingsHelper.getInstance(PluginApiService.this);
             if ( settingsHelper.getConfig() == null ) {
                 // This shouldn't happen!
                 return null;
@@ -104,7 +108,6 @@ public class PluginApiService extends Service {
 
         @Override
         public boolean setAppPreference(String packageId, String attr, String value) {
-            SettingsHelper settingsHelper = SettingsHelper.getInstance(PluginApiService.this);
             if ( settingsHelper.getConfig() == null ) {
                 // This shouldn't happen!
                 return false;
@@ -114,7 +117,6 @@ public class PluginApiService extends Service {
 
         @Override
         public void commitAppPreferences(String packageId) {
-            SettingsHelper settingsHelper = SettingsHelper.getInstance(PluginApiService.this);
             if ( settingsHelper.getConfig() == null ) {
                 // This shouldn't happen!
                 return;
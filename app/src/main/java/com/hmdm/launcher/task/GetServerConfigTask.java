@@ -25,20 +25,25 @@ import android.os.Build;
 import android.provider.Settings;
 import android.util.Log;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
 import com.hmdm.launcher.BuildConfig;
 import com.hmdm.launcher.Const;
 import com.hmdm.launcher.helper.CryptoHelper;
+import com.hmdm.launcher.helper.JsonHelper;
 import com.hmdm.launcher.helper.SettingsHelper;
 import com.hmdm.launcher.json.DeviceCreateOptions;
 import com.hmdm.launcher.json.ServerConfig;
+import com.hmdm.launcher.json.ServerConfigPatchResponse;
 import com.hmdm.launcher.json.ServerConfigResponse;
 import com.hmdm.launcher.pro.ProUtils;
 import com.hmdm.launcher.server.ServerService;
 import com.hmdm.launcher.server.ServerServiceKeeper;
+import com.hmdm.launcher.server.SignedDataInputStream;
 import com.hmdm.launcher.util.PushNotificationMqttWrapper;
 import com.hmdm.launcher.util.RemoteLogger;
 
+import java.net.HttpURLConnection;
+
 import okhttp3.ResponseBody;
 import retrofit2.Response;
 
@@ -50,6 +55,9 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
     private ServerService serverService;
     private ServerService secondaryServerService;
 
+    private boolean notModified;
+    private String configETag;
+
     public GetServerConfigTask( Context context ) {
         this.context = context;
         this.settingsHelper = SettingsHelper.getInstance( context );
@@ -89,7 +97,14 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
         try {
             ServerConfig serverConfig = null;
             if (createOptions == null) {
-                serverConfig = BuildConfig.CHECK_SIGNATURE ? getServerConfigSecure(deviceId, signature) : getServerConfigPlain(deviceId, signature);
+                if (!BuildConfig.CHECK_SIGNATURE) {
+                    // Try to get only the changes first
+                    // Changes are not signed, so the full config is always loaded if the signature is checked
+                    serverConfig = getServerConfigChanges(deviceId, signature);
+                }
+                if (serverConfig == null && !notModified) {
+                    serverConfig = BuildConfig.CHECK_SIGNATURE ? getServerConfigSecure(deviceId, signature) : getServerConfigPlain(deviceId, signature);
+                }
             } else {
                 serverConfig = BuildConfig.CHECK_SIGNATURE ? createAndGetServerConfigSecure(deviceId, createOptions, signature) :
                         createAndGetServerConfigPlain(deviceId, createOptions, signature);
@@ -107,6 +122,8 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
                 }
 
                 settingsHelper.updateConfig(serverConfig);
+                // The new configuration isn't applied yet, see ConfigUpdater
+                settingsHelper.setConfigETag(null);
 
                 // Device already created, erase the device creation options
                 settingsHelper.setDeviceIdUse(null);
@@ -119,11 +136,14 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
                         !settingsHelper.getConfig().getMainApp().equals(context.getPackageName()) &&
                         Build.VERSION.SDK_INT >= Build.VERSION_CODES.M &&
                         !Settings.canDrawOverlays(context)) {
-                        settingsHelper.getConfig().setKioskMode(false);
-                        settingsHelper.updateConfig(settingsHelper.getConfig());
+                        ServerConfig newConfig = settingsHelper.copyConfig();
+                        newConfig.setKioskMode(false);
+                        settingsHelper.updateConfig(newConfig);
                 }
 
                 return Const.TASK_SUCCESS;
+            } else if (notModified) {
+                return Const.TASK_NOT_MODIFIED;
             } else {
                 return Const.TASK_ERROR;
             }
@@ -134,22 +154,75 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
         return Const.TASK_NETWORK_ERROR;
     }
 
+    // ETag of the received configuration, it should be saved when the configuration is applied
+    public String getConfigETag() {
+        return configETag;
+    }
+
+    // Returns null if changes can't be applied to the current configuration so the full configuration is required
+    private ServerConfig getServerConfigChanges(String deviceId, String signature) throws Exception {
+        ServerConfig currentConfig = settingsHelper.getConfig();
+        if (currentConfig == null || currentConfig.getRevision() == null) {
+            return null;
+        }
+        long revision = currentConfig.getRevision();
+        String appliedETag = settingsHelper.getConfigETag();
+
+        Response<ServerConfigPatchResponse> response = null;
+        try {
+            response = serverService.
+                    getServerConfigPatch(settingsHelper.getServerProject(), deviceId, revision, signature, Build.CPU_ABI, appliedETag).execute();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        if (response == null) {
+            response = secondaryServerService.
+                    getServerConfigPatch(settingsHelper.getServerProject(), deviceId, revision, signature, Build.CPU_ABI, appliedETag).execute();
+        }
+
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            notModified = true;
+            return null;
+        }
+
+        if (response.isSuccessful() && Const.STATUS_OK.equals(response.body().getStatus()) && response.body().getData() != null) {
+            ServerConfig serverConfig = settingsHelper.applyConfigPatch(response.body().getData());
+            if (serverConfig == null) {
+                Log.i(Const.LOG_TAG, "Configuration revision " + revision + " is outdated, loading full configuration");
+                return null;
+            }
+            SettingsHelper.getInstance(context).setExternalIp(response.headers().get(Const.HEADER_IP_ADDRESS));
+            configETag = response.headers().get(Const.HEADER_ETAG);
+            return serverConfig;
+        }
+        return null;
+    }
+
     private ServerConfig getServerConfigPlain(String deviceId, String signature) throws Exception {
         Response<ServerConfigResponse> response = null;
+        // Server returns 304 Not Modified if the applied configuration is up to date
+        String appliedETag = settingsHelper.getConfigETag();
         try {
             response = serverService.
-                    getServerConfig(settingsHelper.getServerProject(), deviceId, signature, Build.CPU_ABI).execute();
+                    getServerConfig(settingsHelper.getServerProject(), deviceId, signature, Build.CPU_ABI, appliedETag).execute();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
         if (response == null) {
             response = secondaryServerService.
-                    getServerConfig(settingsHelper.getServerProject(), deviceId, signature, Build.CPU_ABI).execute();
+                    getServerConfig(settingsHelper.getServerProject(), deviceId, signature, Build.CPU_ABI, appliedETag).execute();
+        }
+
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            notModified = true;
+            return null;
         }
 
         if (response.isSuccessful() && Const.STATUS_OK.equals(response.body().getStatus()) && response.body().getData() != null) {
             SettingsHelper.getInstance(context).setExternalIp(response.headers().get(Const.HEADER_IP_ADDRESS));
+            configETag = response.headers().get(Const.HEADER_ETAG);
             return response.body().getData();
         }
         return null;
@@ -159,44 +232,27 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
     // This is an additional protection against Man-In-The-Middle attacks
     private ServerConfig getServerConfigSecure(String deviceId, String signature) throws Exception {
         Response<ResponseBody> response = null;
+        String appliedETag = settingsHelper.getConfigETag();
 
         try {
             response = serverService.
-                    getRawServerConfig(settingsHelper.getServerProject(), deviceId, signature, Build.CPU_ABI).execute();
+                    getRawServerConfig(settingsHelper.getServerProject(), deviceId, signature, Build.CPU_ABI, appliedETag).execute();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
         if (response == null) {
             response = secondaryServerService.
-                    getRawServerConfig(settingsHelper.getServerProject(), deviceId, signature, Build.CPU_ABI).execute();
+                    getRawServerConfig(settingsHelper.getServerProject(), deviceId, signature, Build.CPU_ABI, appliedETag).execute();
         }
 
-        if (response.isSuccessful()) {
-            String serverResponse = response.body().string();
-
-            // Check response signature
-            String serverSignature = response.headers().get(Const.HEADER_RESPONSE_SIGNATURE);
-            if (serverSignature == null) {
-                Log.e(Const.LOG_TAG, "Missing " + Const.HEADER_RESPONSE_SIGNATURE + " flag, dropping response");
-                return null;
-            }
+        if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            notModified = true;
+            return null;
+        }
 
-            // We need to extract data from the response body
-            // Here we assume the specific form of response body: {"status":"OK","message":null,"data":{...}}
-            final String dataMarker = "\"data\":";
-            int pos = serverResponse.indexOf(dataMarker);
-            if (pos == -1) {
-                Log.e(Const.LOG_TAG, "Wrong server response, missing data: " + serverResponse);
-                return null;
-            }
-            String serverData = serverResponse.substring(pos + dataMarker.length(), serverResponse.length() - 1);
-            String calculatedSignature = CryptoHelper.getSHA1String(BuildConfig.REQUEST_SIGNATURE + serverData.replaceAll("\\s", ""));
-            if (!calculatedSignature.equalsIgnoreCase(serverSignature)) {
-                Log.e(Const.LOG_TAG, "Server signature " + serverSignature + " doesn't match calculated signature " + calculatedSignature + ", dropping response");
-                return null;
-            }
-            return new ObjectMapper().readValue(serverData, ServerConfig.class);
+        if (response.isSuccessful()) {
+            return readSignedServerConfig(response);
         }
         return null;
     }
@@ -218,6 +274,7 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
 
         if (response.isSuccessful() && Const.STATUS_OK.equals(response.body().getStatus()) && response.body().getData() != null) {
             SettingsHelper.getInstance(context).setExternalIp(response.headers().get(Const.HEADER_IP_ADDRESS));
+            configETag = response.headers().get(Const.HEADER_ETAG);
             return response.body().getData();
         }
         return null;
@@ -242,31 +299,40 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
         }
 
         if (response.isSuccessful()) {
-            String serverResponse = response.body().string();
+            return readSignedServerConfig(response);
+        }
+        return null;
+    }
 
-            // Check response signature
-            String serverSignature = response.headers().get(Const.HEADER_RESPONSE_SIGNATURE);
-            if (serverSignature == null) {
-                Log.e(Const.LOG_TAG, "Missing " + Const.HEADER_RESPONSE_SIGNATURE + " flag, dropping response");
-                return null;
-            }
+    // Check response signature while parsing the response stream
+    // so a large configuration is never kept in memory as a string
+    private ServerConfig readSignedServerConfig(Response<ResponseBody> response) throws Exception {
+        String serverSignature = response.headers().get(Const.HEADER_RESPONSE_SIGNATURE);
+        if (serverSignature == null) {
+            Log.e(Const.LOG_TAG, "Missing " + Const.HEADER_RESPONSE_SIGNATURE + " flag, dropping response");
+            response.body().close();
+            return null;
+        }
 
-            // We need to extract data from the response body
-            // Here we assume the specific form of response body: {"status":"OK","message":null,"data":{...}}
-            final String dataMarker = "\"data\":";
-            int pos = serverResponse.indexOf(dataMarker);
-            if (pos == -1) {
-                Log.e(Const.LOG_TAG, "Wrong server response, missing data: " + serverResponse);
-                return null;
-            }
-            String serverData = serverResponse.substring(pos + dataMarker.length(), serverResponse.length() - 1);
-            String calculatedSignature = CryptoHelper.getSHA1String(BuildConfig.REQUEST_SIGNATURE + serverData.replaceAll("\\s", ""));
-            if (!calculatedSignature.equalsIgnoreCase(serverSignature)) {
-                Log.e(Const.LOG_TAG, "Server signature " + serverSignature + " doesn't match calculated signature " + calculatedSignature + ", dropping response");
-                return null;
-            }
-            return new ObjectMapper().readValue(serverData, ServerConfig.class);
+        ServerConfigResponse serverResponse;
+        String calculatedSignature;
+        try (SignedDataInputStream inputStream = new SignedDataInputStream(response.body().byteStream(), BuildConfig.REQUEST_SIGNATURE)) {
+            // The stream must not be closed by the parser: the signature requires reading it to the end
+            serverResponse = JsonHelper.getReader(ServerConfigResponse.class)
+                    .without(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+                    .readValue(inputStream);
+            calculatedSignature = inputStream.getSignature();
         }
-        return null;
+
+        if (calculatedSignature == null || serverResponse.getData() == null) {
+            Log.e(Const.LOG_TAG, "Wrong server response, missing data");
+            return null;
+        }
+        if (!calculatedSignature.equalsIgnoreCase(serverSignature)) {
+            Log.e(Const.LOG_TAG, "Server signature " + serverSignature + " doesn't match calculated signature " + calculatedSignature + ", dropping response");
+            return null;
+        }
+        configETag = response.headers().get(Const.HEADER_ETAG);
+        return serverResponse.getData();
     }
 }
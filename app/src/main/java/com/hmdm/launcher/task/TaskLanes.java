@@ -0,0 +1,136 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.task;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.hmdm.launcher.Const;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executors for the background tasks, used instead of the global serial AsyncTask executor
+ * so a long checksum calculation or download doesn't block the other tasks.
+ * Usage: task.executeOnExecutor(TaskLanes.IO, params)
+ */
+public class TaskLanes {
+
+    // Network requests to the server
+    public static final Lane IO = new Lane("io", 4);
+    // Checksums, package manager queries and other local work
+    public static final Lane CPU = new Lane("cpu", Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+    // Downloads and installations of files and apps
+    public static final Lane INSTALL = new Lane("install", 2);
+    // Downloads ahead of the installation, see ParallelDownloader
+    public static final int DOWNLOAD_THREADS = 4;
+    public static final Lane DOWNLOAD = new Lane("download", DOWNLOAD_THREADS);
+    // Connections of the segmented downloads, see FileDownloader
+    public static final Lane SEGMENT = new Lane("segment", 8);
+    // Original and hedged requests to the server, see HedgingInterceptor
+    public static final Lane HEDGE = new Lane("hedge", 8);
+
+    // Queue depth starting from which the lane is considered overloaded
+    private static final int QUEUE_DEPTH_WARNING = 16;
+
+    public static class Lane implements Executor {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+        private final AtomicLong maxWaitMs = new AtomicLong();
+
+        private Lane(final String name, int threads) {
+            this.name = name;
+            ThreadFactory threadFactory = new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(() -> {
+                        // Same priority as AsyncTask threads
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }, "lane-" + name + "-" + count.incrementAndGet());
+                }
+            };
+            executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), threadFactory);
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            final long queuedTime = SystemClock.elapsedRealtime();
+            executor.execute(() -> {
+                long waitMs = SystemClock.elapsedRealtime() - queuedTime;
+                if (waitMs > maxWaitMs.get()) {
+                    maxWaitMs.set(waitMs);
+                }
+                command.run();
+            });
+            int depth = executor.getQueue().size();
+            if (depth > maxQueueDepth.get()) {
+                maxQueueDepth.set(depth);
+                if (depth >= QUEUE_DEPTH_WARNING) {
+                    Log.w(Const.LOG_TAG, "Task lane overloaded: " + this);
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Tasks waiting for a thread
+        public int getQueueDepth() {
+            return executor.getQueue().size();
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+
+        public long getCompletedCount() {
+            return executor.getCompletedTaskCount();
+        }
+
+        public long getMaxWaitMs() {
+            return maxWaitMs.get();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": active=" + getActiveCount() + ", queued=" + getQueueDepth() +
+                    ", maxQueued=" + getMaxQueueDepth() + ", completed=" + getCompletedCount() +
+                    ", maxWaitMs=" + getMaxWaitMs();
+        }
+    }
+}
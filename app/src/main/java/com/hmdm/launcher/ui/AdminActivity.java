@@ -194,7 +194,7 @@ public class AdminActivity extends BaseActivity {
 
 
     public void resetNetworkPolicy(View view) {
-        ServerConfig config = settingsHelper.getConfig();
+        ServerConfig config = settingsHelper.copyConfig();
         if (config != null) {
             config.setWifi(null);
             config.setMobileData(null);
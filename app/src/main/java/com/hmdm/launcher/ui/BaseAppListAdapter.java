@@ -105,7 +105,6 @@ public class BaseAppListAdapter extends RecyclerView.Adapter<BaseAppListAdapter.
             holder.binding.imageView.getLayoutParams().height = iconSize;
             if (appInfo.iconUrl != null) {
                 // Load the icon
-                // TODO: for BuildConfig.TRUST_ANY_CERTIFICATE, use custom Picasso builder as in MainActivity.java
                 Picasso.with(context).load(appInfo.iconUrl).into(holder.binding.imageView);
             } else {
                 switch (appInfo.type) {
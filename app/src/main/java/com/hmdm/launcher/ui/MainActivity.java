@@ -88,6 +88,7 @@ import com.hmdm.launcher.databinding.DialogSystemSettingsBinding;
 import com.hmdm.launcher.databinding.DialogUnknownSourcesBinding;
 import com.hmdm.launcher.helper.ConfigUpdater;
 import com.hmdm.launcher.helper.CryptoHelper;
+import com.hmdm.launcher.helper.ScheduleHelper;
 import com.hmdm.launcher.helper.SettingsHelper;
 import com.hmdm.launcher.json.Action;
 import com.hmdm.launcher.json.Application;
@@ -98,14 +99,15 @@ import com.hmdm.launcher.pro.ProUtils;
 import com.hmdm.launcher.pro.service.CheckForegroundAppAccessibilityService;
 import com.hmdm.launcher.pro.service.CheckForegroundApplicationService;
 import com.hmdm.launcher.pro.worker.DetailedInfoWorker;
+import com.hmdm.launcher.server.HttpClientKeeper;
 import com.hmdm.launcher.server.ServerService;
 import com.hmdm.launcher.server.ServerServiceKeeper;
-import com.hmdm.launcher.server.UnsafeOkHttpClient;
 import com.hmdm.launcher.service.LocationService;
 import com.hmdm.launcher.service.PluginApiService;
 import com.hmdm.launcher.service.StatusControlService;
 import com.hmdm.launcher.task.GetServerConfigTask;
 import com.hmdm.launcher.task.SendDeviceInfoTask;
+import com.hmdm.launcher.task.TaskLanes;
 import com.hmdm.launcher.util.AppInfo;
 import com.hmdm.launcher.util.CrashLoopProtection;
 import com.hmdm.launcher.util.DeviceInfoProvider;
@@ -114,6 +116,7 @@ import com.hmdm.launcher.util.RemoteLogger;
 import com.hmdm.launcher.util.SystemUtils;
 import com.hmdm.launcher.util.Utils;
 import com.hmdm.launcher.worker.PushNotificationWorker;
+import com.hmdm.launcher.worker.SyncWorker;
 import com.jakewharton.picasso.OkHttp3Downloader;
 import com.squareup.picasso.NetworkPolicy;
 import com.squareup.picasso.Picasso;
@@ -126,7 +129,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
-import okhttp3.OkHttpClient;
 import okhttp3.ResponseBody;
 import retrofit2.Response;
 
@@ -211,6 +213,9 @@ public class MainActivity
 
     private ConfigUpdater configUpdater = new ConfigUpdater();
 
+    // Loads the background image, created once to reuse the threads and connections
+    private Picasso backgroundPicasso;
+
     private BroadcastReceiver receiver = new BroadcastReceiver() {
         @Override
         public void onReceive( Context context, Intent intent ) {
@@ -528,7 +533,7 @@ public class MainActivity
 
                 return null;
             }
-        }.execute();
+        }.executeOnExecutor(TaskLanes.IO);
 
     }
 
@@ -553,7 +558,7 @@ public class MainActivity
             protected void onPostExecute(Void v) {
                 setDefaultLauncherEarly();
             }
-        }.execute();
+        }.executeOnExecutor(TaskLanes.CPU);
     }
 
     private void startServices() {
@@ -623,7 +628,7 @@ public class MainActivity
                 protected void onPostExecute(Void v) {
                     checkAndStartLauncher();
                 }
-            }.execute();
+            }.executeOnExecutor(TaskLanes.CPU);
             return;
         }
         checkAndStartLauncher();
@@ -836,8 +841,9 @@ public class MainActivity
                     !Settings.canDrawOverlays( this )) {
                 Toast.makeText(this, getString(R.string.kiosk_mode_requires_overlays,
                         getString(R.string.app_name)), Toast.LENGTH_LONG).show();
-                config.setKioskMode(false);
-                settingsHelper.updateConfig(config);
+                ServerConfig newConfig = settingsHelper.copyConfig();
+                newConfig.setKioskMode(false);
+                settingsHelper.updateConfig(newConfig);
                 createLauncherButtons();
                 return;
             }
@@ -1432,7 +1438,7 @@ public class MainActivity
                 Log.i(Const.LOG_TAG, "Showing content from setActions()");
                 showContent(settingsHelper.getConfig());
             }
-        }.execute();
+        }.executeOnExecutor(TaskLanes.CPU);
     }
 
     private void showContent(ServerConfig config ) {
@@ -1502,39 +1508,26 @@ public class MainActivity
             needRedrawContentAfterReconfigure = false;
 
             if ( config.getBackgroundImageUrl() != null && config.getBackgroundImageUrl().length() > 0 ) {
-                Picasso.Builder builder = new Picasso.Builder(this);
-                if (BuildConfig.TRUST_ANY_CERTIFICATE) {
-                    builder.downloader(new OkHttp3Downloader(UnsafeOkHttpClient.getUnsafeOkHttpClient()));
-                } else if (BuildConfig.CHECK_SIGNATURE) {
-                    // Here we assume TRUST_ANY_CERTIFICATE and CHECK_SIGNATURE are not turned on together!
-                    // That makes no sense: TRUST_ANY_CERTIFICATE is unsafe, but CHECK_SIGNATURE is for safe setup
-                    OkHttpClient clientWithSignature = new OkHttpClient.Builder()
-                            .addInterceptor(chain -> {
-                                okhttp3.Request.Builder requestBuilder = chain.request().newBuilder();
-                                String signature = InstallUtils.getRequestSignature(chain.request().url().toString());
-                                if (signature != null) {
-                                    requestBuilder.addHeader("X-Request-Signature", signature);
-                                }
-                                return chain.proceed(requestBuilder.build());
-
-                            })
-                            .build();
-                    builder.downloader(new OkHttp3Downloader(clientWithSignature));
-                }
-                builder.listener(new Picasso.Listener()
-                {
-                    @Override
-                    public void onImageLoadFailed(Picasso picasso, Uri uri, Exception exception)
+                if (backgroundPicasso == null) {
+                    // The trust settings and the request signature are set up in the shared HTTP client
+                    Picasso.Builder builder = new Picasso.Builder(this);
+                    builder.downloader(new OkHttp3Downloader(HttpClientKeeper.getPicassoClient(this)));
+                    builder.listener(new Picasso.Listener()
                     {
-                        // On fault, get the background image from the cache
-                        // This is a workaround against a bug in Picasso: it doesn't display cached images by default!
-                        Picasso.with(MainActivity.this)
-                            .load(config.getBackgroundImageUrl())
-                            .networkPolicy(NetworkPolicy.OFFLINE)
-                            .into(binding.activityMainBackground);
-                    }
-                });
-                builder.build()
+                        @Override
+                        public void onImageLoadFailed(Picasso picasso, Uri uri, Exception exception)
+                        {
+                            // On fault, get the background image from the cache
+                            // This is a workaround against a bug in Picasso: it doesn't display cached images by default!
+                            Picasso.with(MainActivity.this)
+                                .load(uri)
+                                .networkPolicy(NetworkPolicy.OFFLINE)
+                                .into(binding.activityMainBackground);
+                        }
+                    });
+                    backgroundPicasso = builder.build();
+                }
+                backgroundPicasso
                     .load(config.getBackgroundImageUrl())
                     .into(binding.activityMainBackground);
 
@@ -1648,6 +1641,14 @@ public class MainActivity
                 return Result.failure();
             }
 
+            if (SyncWorker.isSupported()) {
+                // Device info is sent together with the other data
+                int result = SyncWorker.sync(context);
+                if (result != SyncWorker.RESULT_UNSUPPORTED) {
+                    return result == SyncWorker.RESULT_SUCCESS ? Result.success() : Result.failure();
+                }
+            }
+
             DeviceInfo deviceInfo = DeviceInfoProvider.getDeviceInfo(context, true, true);
 
             ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
@@ -1681,7 +1682,7 @@ public class MainActivity
             needSendDeviceInfoAfterReconfigure = false;
             SendDeviceInfoTask sendDeviceInfoTask = new SendDeviceInfoTask(this);
             DeviceInfo deviceInfo = DeviceInfoProvider.getDeviceInfo(this, true, true);
-            sendDeviceInfoTask.execute(deviceInfo);
+            sendDeviceInfoTask.executeOnExecutor(TaskLanes.IO, deviceInfo);
         }
     }
 
@@ -1693,7 +1694,8 @@ public class MainActivity
         PeriodicWorkRequest request =
                 new PeriodicWorkRequest.Builder(SendDeviceInfoWorker.class, SEND_DEVICE_INFO_PERIOD_MINS, TimeUnit.MINUTES)
                         .addTag(Const.WORK_TAG_COMMON)
-                        .setInitialDelay(SEND_DEVICE_INFO_PERIOD_MINS, TimeUnit.MINUTES)
+                        .setInitialDelay(ScheduleHelper.getInterval(this, ScheduleHelper.JOB_DEVICE_INFO,
+                                SEND_DEVICE_INFO_PERIOD_MINS * 60000L), TimeUnit.MILLISECONDS)
                         .build();
         WorkManager.getInstance(getApplicationContext()).enqueueUniquePeriodicWork(WORK_TAG_DEVICEINFO, ExistingPeriodicWorkPolicy.REPLACE, request);
     }
@@ -1747,6 +1749,12 @@ public class MainActivity
 
         settingsHelper.setMainActivityRunning(false);
 
+        if (backgroundPicasso != null) {
+            // Stops its dispatcher thread and executor, a new instance is created by the recreated activity
+            backgroundPicasso.shutdown();
+            backgroundPicasso = null;
+        }
+
         WindowManager manager = ((WindowManager)getApplicationContext().getSystemService(Context.WINDOW_SERVICE));
         if ( applicationNotAllowed != null ) {
             try { manager.removeView( applicationNotAllowed ); }
@@ -2140,7 +2148,7 @@ public class MainActivity
                 }
             }
         };
-        task.execute();
+        task.executeOnExecutor(TaskLanes.IO);
     }
 
     private void createAndShowUnknownSourcesDialog() {
@@ -19,52 +19,136 @@
 
 package com.hmdm.launcher.util;
 
-import java.io.BufferedInputStream;
+import com.hmdm.launcher.task.TaskLanes;
+
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
-import java.security.DigestInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CryptoUtils {
+    // Large reads reduce the number of system calls, the buffers are reused by each thread
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            // Heap buffer: MessageDigest copies a direct buffer to an array anyway
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+    };
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     public static String calculateChecksum(InputStream fileContent) {
         // Calculate checksum
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+        MessageDigest md = getMD5();
+        if (md == null) {
             return null;
         }
-        try (InputStream is = new BufferedInputStream(fileContent);
-             DigestInputStream dis = new DigestInputStream(is, md)) {
-            /* Read decorated stream (dis) to EOF as normal... */
-            int b;
-            while ((b = dis.read()) != -1) {
-                // digest will consume the content when read() called
+        byte[] buffer = buffers.get().array();
+        try (InputStream is = fileContent) {
+            int length;
+            while ((length = is.read(buffer)) != -1) {
+                md.update(buffer, 0, length);
             }
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
+        return toHexString(md.digest());
+    }
 
-        // to calculate message digest of the input string
-        // returned as array of byte
-        byte[] digest = md.digest();
-
-        // Convert byte array into signum representation
-        BigInteger no = new BigInteger(1, digest);
+    // Returns null if the file can't be read
+    public static String calculateChecksum(File file) {
+        MessageDigest md = getMD5();
+        if (md == null) {
+            return null;
+        }
+        ByteBuffer buffer = buffers.get();
+        try (FileInputStream is = new FileInputStream(file)) {
+            FileChannel channel = is.getChannel();
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                md.update(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return toHexString(md.digest());
+    }
 
-        // Convert message digest into hex value
-        String hashtext = no.toString(16);
+    // Calculates the checksums of the files in parallel, the results are in the file order.
+    // The checksum is null if the file can't be read.
+    // The calling thread also calculates the checksums, so this doesn't wait for a busy CPU lane
+    public static String[] calculateChecksums(final List<File> files) {
+        return calculateChecksums(files, TaskLanes.CPU, Runtime.getRuntime().availableProcessors());
+    }
 
-        // Add preceding 0s to make it 32 bit
-        while (hashtext.length() < 32) {
-            hashtext = "0" + hashtext;
+    // Uses up to threads threads including the calling one, the others are taken from the executor
+    static String[] calculateChecksums(final List<File> files, Executor executor, int threads) {
+        final String[] checksums = new String[files.size()];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final Runnable worker = () -> {
+            int i;
+            while ((i = next.getAndIncrement()) < checksums.length) {
+                try {
+                    checksums[i] = calculateChecksum(files.get(i));
+                } catch (Throwable e) {
+                    // The checksum stays null, same as for an unreadable file
+                    e.printStackTrace();
+                } finally {
+                    // Counted in any case, otherwise the calling thread would wait forever
+                    if (completed.incrementAndGet() == checksums.length) {
+                        synchronized (checksums) {
+                            checksums.notifyAll();
+                        }
+                    }
+                }
+            }
+        };
+        int helpers = Math.min(files.size(), threads) - 1;
+        for (int i = 0; i < helpers; i++) {
+            executor.execute(worker);
         }
+        worker.run();
+        synchronized (checksums) {
+            while (completed.get() < checksums.length) {
+                try {
+                    checksums.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return checksums;
+    }
 
-        return hashtext;
+    public static String toHexString(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
     }
 
+    private static MessageDigest getMD5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 }
@@ -42,11 +42,10 @@ import com.hmdm.launcher.helper.SettingsHelper;
 import com.hmdm.launcher.json.Application;
 import com.hmdm.launcher.json.DeviceInfo;
 import com.hmdm.launcher.json.RemoteFile;
+import com.hmdm.launcher.json.ServerConfig;
 import com.hmdm.launcher.pro.ProUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.List;
@@ -67,11 +66,13 @@ public class DeviceInfoProvider {
             permissions.add(ProUtils.checkAccessibilityService(context) ? 1 : 0);
         }
 
-        SettingsHelper config = SettingsHelper.getInstance(context);
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        // Read the configuration once to get a consistent state
+        ServerConfig config = settingsHelper.getConfig();
         if (queryApps) {
             PackageManager packageManager = context.getPackageManager();
-            if (config.getConfig() != null) {
-                List<Application> requiredApps = SettingsHelper.getInstance(context).getConfig().getApplications();
+            if (config != null) {
+                List<Application> requiredApps = config.getApplications();
                 for (Application application : requiredApps) {
                     if (application.isRemove()) {
                         continue;
@@ -100,7 +101,7 @@ public class DeviceInfoProvider {
                     }
                 }
 
-                List<RemoteFile> requiredFiles = SettingsHelper.getInstance(context).getConfig().getFiles();
+                List<RemoteFile> requiredFiles = config.getFiles();
                 for (RemoteFile remoteFile : requiredFiles) {
                     File file = new File(Environment.getExternalStorageDirectory(), remoteFile.getPath());
                     if (file.exists()) {
@@ -111,11 +112,11 @@ public class DeviceInfoProvider {
                         } else {
                             // How could that happen? The database entry should exist for each file
                             // Let's recalculate the checksum to check if the file matches
-                            try {
+                            String checksum = CryptoUtils.calculateChecksum(file);
+                            if (checksum != null) {
                                 RemoteFile copy = new RemoteFile(remoteFile);
-                                copy.setChecksum(CryptoUtils.calculateChecksum(new FileInputStream(file)));
+                                copy.setChecksum(checksum);
                                 files.add(copy);
-                            } catch (FileNotFoundException e) {
                             }
                         }
                     }
@@ -123,17 +124,17 @@ public class DeviceInfoProvider {
             }
         }
 
-        deviceInfo.setDeviceId( SettingsHelper.getInstance( context ).getDeviceId() );
+        deviceInfo.setDeviceId( settingsHelper.getDeviceId() );
 
         String phone = DeviceInfoProvider.getPhoneNumber(context, 0);
-        if (phone == null || phone.equals("")) {
-            phone = config.getConfig().getPhone();
+        if ((phone == null || phone.equals("")) && config != null) {
+            phone = config.getPhone();
         }
         deviceInfo.setPhone(phone);
 
         String imei = DeviceInfoProvider.getImei(context, 0);
-        if (imei == null || imei.equals("")) {
-            imei = config.getConfig().getImei();
+        if ((imei == null || imei.equals("")) && config != null) {
+            imei = config.getImei();
         }
         deviceInfo.setImei(imei);
 
@@ -0,0 +1,115 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.hmdm.launcher.helper.JsonHelper;
+
+import java.io.File;
+
+/**
+ * State of a partially downloaded file, stored next to the file,
+ * so the download is resumed after a network error or an app restart.
+ */
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class DownloadJournal {
+
+    private String url;
+    // Strong ETag or Last-Modified date of the file, sent in If-Range
+    private String validator;
+    // File length, -1 if unknown
+    private long total = -1;
+    // Bytes written and synced to the partial file
+    private long done;
+    // Segmented download: size and completion flags of the segments, null for a sequential download
+    private long chunkSize;
+    private boolean[] chunks;
+
+    public DownloadJournal() {}
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getValidator() {
+        return validator;
+    }
+
+    public void setValidator(String validator) {
+        this.validator = validator;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getDone() {
+        return done;
+    }
+
+    public void setDone(long done) {
+        this.done = done;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public boolean[] getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(boolean[] chunks) {
+        this.chunks = chunks;
+    }
+
+    // Returns null if there's no journal or it can't be read
+    public static DownloadJournal load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return JsonHelper.getObjectMapper().readValue(file, DownloadJournal.class);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public void save(File file) {
+        try {
+            JsonHelper.getObjectMapper().writeValue(file, this);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.hmdm.launcher.BuildConfig;
+import com.hmdm.launcher.Const;
+import com.hmdm.launcher.server.HttpClientKeeper;
+import com.hmdm.launcher.task.TaskLanes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.LinkedList;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Downloads the files of the configuration. A partially downloaded file is kept with a journal
+ * (URL, validator, bytes done) and resumed by a Range request, so a retry or an app restart
+ * costs only the missing bytes. If-Range makes the server return the whole file if it has been changed.
+ * If SEGMENTED_DOWNLOADS is set, large files are downloaded by several connections in parallel,
+ * each connection fetching a range of the file; the number of connections grows while it improves the throughput.
+ * The MD5 checksum is calculated from the received data and checked before the file is moved to the target.
+ */
+public class FileDownloader {
+    // Partial files and their journals, kept by InstallUtils.clearTempFiles()
+    public static final String PARTIAL_DIR = "partial";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    // The partial file is synced and the journal is saved after each portion of data
+    private static final long JOURNAL_INTERVAL = 1024 * 1024;
+    // Attempts to resume the download within one call, if the previous attempt received some data
+    private static final int MAX_ATTEMPTS = 3;
+    // Partial files not resumed for this time are deleted
+    private static final long PARTIAL_EXPIRY_MS = 7 * 24 * 3600000L;
+    private static final int BUFFER_SIZE = 16384;
+
+    // Files smaller than this are downloaded by one connection
+    private static final long MIN_SEGMENTED_SIZE = 8 * 1024 * 1024;
+    // Range fetched by one request of the segmented download
+    private static final long CHUNK_SIZE = 2 * 1024 * 1024;
+    private static final int MAX_SEGMENTS = 4;
+    // Throughput is measured during this interval before adding a connection
+    private static final long SAMPLE_INTERVAL_MS = 2000;
+    // A connection is added only if the previous one increased the throughput by 10%
+    private static final double MIN_THROUGHPUT_GAIN = 1.1;
+    private static final int MAX_SEGMENT_ERRORS = 5;
+
+    // Downloads the file to the target, resuming the previous attempt if possible.
+    // If the expected MD5 checksum is set and doesn't match, the file is deleted and an exception is thrown
+    public static File download(Context context, String url, File target, String expectedChecksum,
+                                InstallUtils.DownloadProgress progress) throws Exception {
+        return download(context, url, target.getName(), target, expectedChecksum, progress);
+    }
+
+    // The partial file is named by partialName, so the calls with different targets resume the same partial file.
+    // The caller must not run two downloads with the same partialName at once
+    public static File download(Context context, String url, String partialName, File target, String expectedChecksum,
+                                InstallUtils.DownloadProgress progress) throws Exception {
+        File dir = new File(context.getExternalFilesDir(null), PARTIAL_DIR);
+        dir.mkdirs();
+        File partial = new File(dir, partialName);
+        File journalFile = new File(dir, partialName + JOURNAL_SUFFIX);
+
+        String checksum;
+        int attempt = 0;
+        while (true) {
+            long doneBefore = getDone(journalFile);
+            try {
+                checksum = downloadPart(url, partial, journalFile, progress, true);
+                break;
+            } catch (IOException e) {
+                long doneAfter = getDone(journalFile);
+                if (++attempt >= MAX_ATTEMPTS || doneAfter <= doneBefore) {
+                    throw e;
+                }
+                Log.w(Const.LOG_TAG, "Download of " + url + " interrupted at " + doneAfter + " bytes, resuming: " + e.getMessage());
+            }
+        }
+
+        if (checksum == null) {
+            // Downloaded by the previous call but not moved
+            checksum = CryptoUtils.calculateChecksum(partial);
+        }
+        journalFile.delete();
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            partial.delete();
+            throw new IOException("Checksum mismatch for " + url + ": expected " + expectedChecksum + ", got " + checksum);
+        }
+        if (target.exists()) {
+            target.delete();
+        }
+        if (!partial.renameTo(target)) {
+            throw new IOException("Failed to move " + partial.getAbsolutePath() + " to " + target.getAbsolutePath());
+        }
+        return target;
+    }
+
+    private static long getDone(File journalFile) {
+        DownloadJournal journal = DownloadJournal.load(journalFile);
+        return journal != null ? journal.getDone() : 0;
+    }
+
+    // Returns the MD5 checksum of the file, or null if the file has been already downloaded
+    private static String downloadPart(String url, File partial, File journalFile,
+                                       InstallUtils.DownloadProgress progress, boolean canRestart) throws Exception {
+        DownloadJournal journal = DownloadJournal.load(journalFile);
+        long offset = 0;
+        if (journal != null && url.equals(journal.getUrl()) && journal.getValidator() != null && partial.exists()) {
+            offset = Math.min(journal.getDone(), partial.length());
+            if (journal.getTotal() >= 0 && offset >= journal.getTotal()) {
+                // Completed but not moved to the target
+                return null;
+            }
+            if (journal.getChunks() != null) {
+                return downloadSegments(url, partial, journalFile, journal, progress, canRestart);
+            }
+        }
+
+        // The shared client adds the request signature and applies the trust settings
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("Accept-Encoding", "identity");
+        if (offset > 0) {
+            Log.i(Const.LOG_TAG, "Resuming download of " + url + " from " + offset + " bytes");
+            builder.header("Range", "bytes=" + offset + "-")
+                    .header("If-Range", journal.getValidator());
+        }
+        Response response = HttpClientKeeper.getClient().newCall(builder.build()).execute();
+        try {
+            long total;
+            if (offset > 0 && response.code() == 206 && getRangeStart(response) == offset) {
+                total = getRangeTotal(response);
+            } else if (response.code() == 200) {
+                // New download, or the file has been changed since the previous attempt
+                offset = 0;
+                journal = new DownloadJournal();
+                journal.setUrl(url);
+                journal.setValidator(getValidator(response));
+                total = response.body().contentLength();
+                if (isSegmentable(response, journal, total)) {
+                    response.close();
+                    journal.setChunkSize(CHUNK_SIZE);
+                    journal.setChunks(new boolean[(int) ((total + CHUNK_SIZE - 1) / CHUNK_SIZE)]);
+                    journal.setTotal(total);
+                    journal.save(journalFile);
+                    return downloadSegments(url, partial, journalFile, journal, progress, canRestart);
+                }
+            } else if (offset > 0 && canRestart && (response.code() == 206 || response.code() == 416)) {
+                // Unexpected range, start from the beginning
+                response.close();
+                journalFile.delete();
+                partial.delete();
+                return downloadPart(url, partial, journalFile, progress, false);
+            } else {
+                throw new Exception("Bad server response for " + url + ": " + response.code());
+            }
+            journal.setTotal(total);
+            journal.setDone(offset);
+            journal.save(journalFile);
+
+            RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            long done = offset;
+            try {
+                raf.setLength(offset);
+                // Only the previously downloaded part is read to restore the digest
+                updateDigest(md, raf.getChannel(), 0, offset);
+                raf.seek(offset);
+                progress.onDownloadProgress(getPercent(done, total), total, done);
+
+                InputStream is = response.body().byteStream();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int length;
+                long saved = done;
+                while ((length = is.read(buffer)) > 0) {
+                    raf.write(buffer, 0, length);
+                    md.update(buffer, 0, length);
+                    done += length;
+                    progress.onDownloadProgress(getPercent(done, total), total, done);
+                    if (done - saved >= JOURNAL_INTERVAL) {
+                        raf.getFD().sync();
+                        journal.setDone(done);
+                        journal.save(journalFile);
+                        saved = done;
+                    }
+                }
+            } finally {
+                // Keep the received data for the next attempt
+                try {
+                    raf.getFD().sync();
+                    raf.close();
+                    journal.setDone(done);
+                    journal.save(journalFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (total >= 0 && done != total) {
+                throw new IOException("Incomplete download of " + url + ": " + done + " of " + total + " bytes");
+            }
+            return CryptoUtils.toHexString(md.digest());
+        } finally {
+            response.close();
+        }
+    }
+
+    private static boolean isSegmentable(Response response, DownloadJournal journal, long total) {
+        return BuildConfig.SEGMENTED_DOWNLOADS && total >= MIN_SEGMENTED_SIZE &&
+                journal.getValidator() != null && "bytes".equals(response.header("Accept-Ranges"));
+    }
+
+    private static String downloadSegments(String url, File partial, File journalFile, DownloadJournal journal,
+                                           InstallUtils.DownloadProgress progress, boolean canRestart) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(partial, "rw");
+        SegmentedDownload download;
+        try {
+            // Preallocated, so the segments are written at their positions
+            raf.setLength(journal.getTotal());
+            download = new SegmentedDownload(url, journalFile, journal, raf.getChannel());
+            download.run(progress);
+        } finally {
+            raf.close();
+        }
+        if (download.changed) {
+            journalFile.delete();
+            partial.delete();
+            if (!canRestart) {
+                throw new IOException("File " + url + " has been changed during the download");
+            }
+            return downloadPart(url, partial, journalFile, progress, false);
+        }
+        return download.getChecksum();
+    }
+
+    private static void updateDigest(MessageDigest md, FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int length = channel.read(buffer, position);
+            if (length < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            buffer.flip();
+            md.update(buffer);
+            position += length;
+        }
+    }
+
+    private static int getPercent(long done, long total) {
+        return total > 0 ? (int) ((done * 100.0f) / total) : 0;
+    }
+
+    // Weak ETags can't be used in If-Range
+    private static String getValidator(Response response) {
+        String eTag = response.header("ETag");
+        if (eTag != null && !eTag.startsWith("W/")) {
+            return eTag;
+        }
+        return response.header("Last-Modified");
+    }
+
+    // Content-Range: bytes 100-199/200
+    private static long getRangeStart(Response response) {
+        String range = response.header("Content-Range");
+        if (range == null || !range.startsWith("bytes ") || range.indexOf('-') < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(range.substring("bytes ".length(), range.indexOf('-')).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long getRangeTotal(Response response) {
+        String range = response.header("Content-Range");
+        int index = range.indexOf('/');
+        if (index < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(range.substring(index + 1).trim());
+        } catch (NumberFormatException e) {
+            // Unknown length: "*"
+            return -1;
+        }
+    }
+
+    // Chunks are taken by the connections one by one, so a slow connection doesn't delay the others.
+    // The chunks arrive out of order, so the digest is updated by the completed chunks in the file order,
+    // reading them back while they are still in the page cache
+    private static class SegmentedDownload {
+        private final String url;
+        private final File journalFile;
+        private final DownloadJournal journal;
+        private final FileChannel channel;
+        private final LinkedList<Integer> pending = new LinkedList<>();
+        // Bytes of the completed chunks, saved in the journal
+        private long done;
+        // Bytes received including the incomplete chunks, for the progress and the throughput
+        private long received;
+        private int segments;
+        private int errors;
+        private IOException error;
+        private boolean aborted;
+        boolean changed;
+        private final MessageDigest md;
+        // Chunks added to the digest
+        private int digestedChunks;
+
+        SegmentedDownload(String url, File journalFile, DownloadJournal journal, FileChannel channel) throws Exception {
+            md = MessageDigest.getInstance("MD5");
+            this.url = url;
+            this.journalFile = journalFile;
+            this.journal = journal;
+            this.channel = channel;
+            boolean[] chunks = journal.getChunks();
+            for (int i = 0; i < chunks.length; i++) {
+                if (chunks[i]) {
+                    done += getChunkLength(i);
+                } else {
+                    pending.add(i);
+                }
+            }
+            received = done;
+        }
+
+        private long getChunkLength(int i) {
+            return Math.min(journal.getChunkSize(), journal.getTotal() - i * journal.getChunkSize());
+        }
+
+        void run(InstallUtils.DownloadProgress progress) throws IOException, InterruptedException {
+            long total = journal.getTotal();
+            progress.onDownloadProgress(getPercent(done, total), total, done);
+            Log.i(Const.LOG_TAG, "Segmented download of " + url + ", " + pending.size() + " chunks left");
+            try {
+                synchronized (this) {
+                    startSegment();
+                    long sampleStart = SystemClock.elapsedRealtime();
+                    long sampleBytes = received;
+                    double lastThroughput = 0;
+                    boolean growing = true;
+                    while (done < total && !changed) {
+                        wait(500);
+                        progress.onDownloadProgress(getPercent(received, total), total, received);
+                        if (segments == 0 && done < total && !changed) {
+                            if (errors >= MAX_SEGMENT_ERRORS) {
+                                throw error;
+                            }
+                            startSegment();
+                        }
+                        updateDigest();
+                        long now = SystemClock.elapsedRealtime();
+                        if (now - sampleStart < SAMPLE_INTERVAL_MS) {
+                            continue;
+                        }
+                        // Add connections while they increase the throughput
+                        double throughput = (received - sampleBytes) * 1000.0 / (now - sampleStart);
+                        if (growing && segments < MAX_SEGMENTS && pending.size() > 0) {
+                            if (throughput > lastThroughput * MIN_THROUGHPUT_GAIN) {
+                                lastThroughput = throughput;
+                                startSegment();
+                            } else {
+                                growing = false;
+                                Log.i(Const.LOG_TAG, "Segmented download of " + url + ": " + segments +
+                                        " connections, " + (long) throughput / 1024 + " KB/s");
+                            }
+                        }
+                        sampleStart = now;
+                        sampleBytes = received;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    aborted = true;
+                    while (segments > 0) {
+                        wait();
+                    }
+                }
+            }
+        }
+
+        // Called with the lock held, the chunks are not modified when completed
+        private void updateDigest() throws IOException {
+            boolean[] chunks = journal.getChunks();
+            while (digestedChunks < chunks.length && chunks[digestedChunks]) {
+                long start = digestedChunks * journal.getChunkSize();
+                FileDownloader.updateDigest(md, channel, start, start + getChunkLength(digestedChunks));
+                digestedChunks++;
+            }
+        }
+
+        synchronized String getChecksum() throws IOException {
+            if (changed) {
+                return null;
+            }
+            updateDigest();
+            return CryptoUtils.toHexString(md.digest());
+        }
+
+        // Called with the lock held
+        private void startSegment() {
+            segments++;
+            TaskLanes.SEGMENT.execute(() -> {
+                try {
+                    // The connection is closed after an error, the download controller opens a new one
+                    Integer chunk = nextChunk();
+                    while (chunk != null && fetchChunk(chunk)) {
+                        chunk = nextChunk();
+                    }
+                } finally {
+                    synchronized (SegmentedDownload.this) {
+                        segments--;
+                        SegmentedDownload.this.notifyAll();
+                    }
+                }
+            });
+        }
+
+        private synchronized Integer nextChunk() {
+            return aborted || changed ? null : pending.poll();
+        }
+
+        // Returns false on error
+        private boolean fetchChunk(int chunk) {
+            long start = chunk * journal.getChunkSize();
+            long end = start + getChunkLength(chunk);
+            long position = start;
+            Request request = new Request.Builder()
+                    .url(url)
+                    .header("Accept-Encoding", "identity")
+                    .header("Range", "bytes=" + start + "-" + (end - 1))
+                    .header("If-Range", journal.getValidator())
+                    .build();
+            try {
+                Response response = HttpClientKeeper.getClient().newCall(request).execute();
+                try {
+                    if (response.code() == 200) {
+                        synchronized (this) {
+                            changed = true;
+                            notifyAll();
+                        }
+                        return false;
+                    }
+                    if (response.code() != 206 || getRangeStart(response) != start) {
+                        throw new IOException("Bad server response for " + url + ": " + response.code());
+                    }
+                    InputStream is = response.body().byteStream();
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int length;
+                    while (position < end && (length = is.read(buffer, 0, (int) Math.min(buffer.length, end - position))) > 0) {
+                        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+                        while (byteBuffer.hasRemaining()) {
+                            position += channel.write(byteBuffer, position);
+                        }
+                        synchronized (this) {
+                            received += length;
+                            if (aborted) {
+                                throw new IOException("Download aborted");
+                            }
+                        }
+                    }
+                } finally {
+                    response.close();
+                }
+                if (position != end) {
+                    throw new IOException("Incomplete chunk of " + url + ": " + (position - start) + " of " + (end - start) + " bytes");
+                }
+                synchronized (this) {
+                    channel.force(false);
+                    journal.getChunks()[chunk] = true;
+                    done += end - start;
+                    journal.setDone(done);
+                    journal.save(journalFile);
+                    notifyAll();
+                }
+                return true;
+            } catch (IOException e) {
+                synchronized (this) {
+                    // The chunk is downloaded again
+                    received -= position - start;
+                    pending.addFirst(chunk);
+                    errors++;
+                    error = e;
+                    notifyAll();
+                }
+                return false;
+            }
+        }
+    }
+
+    // Deletes the partial files which have not been resumed for a long time
+    public static void clearExpired(Context context) {
+        File dir = new File(context.getExternalFilesDir(null), PARTIAL_DIR);
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (file.lastModified() + PARTIAL_EXPIRY_MS < now) {
+                file.delete();
+            }
+        }
+    }
+}
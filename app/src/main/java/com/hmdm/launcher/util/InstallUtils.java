@@ -42,31 +42,40 @@ import com.hmdm.launcher.helper.CryptoHelper;
 import com.hmdm.launcher.json.Application;
 import com.hmdm.launcher.json.RemoteFile;
 
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
 public class InstallUtils {
+    // Names of the partial files being downloaded
+    private static final Set<String> activeDownloads = new HashSet<>();
+    private static final AtomicInteger downloadCounter = new AtomicInteger();
 
     public static void generateApplicationsForInstallList(Context context, List<Application> applications,
                                                           List<Application> applicationsForInstall) {
+        generateApplicationsForInstallList(context, applications, applications, applicationsForInstall);
+    }
+
+    // allApplications are the applications of the configuration, searched for the removal of the current version
+    // when a lower version of an app is requested
+    public static void generateApplicationsForInstallList(Context context, List<Application> applications,
+                                                          List<Application> allApplications,
+                                                          List<Application> applicationsForInstall) {
         PackageManager packageManager = context.getPackageManager();
 
         // First handle apps to be removed, then apps to be installed
@@ -122,7 +131,7 @@ public class InstallUtils {
                     RemoteLogger.log(context, Const.LOG_DEBUG, "Downgrade requested for " + application.getPkg() +
                             ": installed version " + packageInfo.versionName + ", required version " + application.getVersion());
                     boolean canDowngrade = false;
-                    for (Application a : applications) {
+                    for (Application a : allApplications) {
                         if (a.getPkg().equalsIgnoreCase(application.getPkg()) && a.isRemove() && areVersionsEqual(packageInfo.versionName, a.getVersion())) {
                             // Current version will be removed
                             canDowngrade = true;
@@ -196,6 +205,28 @@ public class InstallUtils {
     public static void generateFilesForInstallList(Context context, List<RemoteFile> files,
                                                           List<RemoteFile> filesForInstall) {
         final long TIME_TOLERANCE_MS = 60000;
+
+        // Existing files without the database entry are checked by the checksum, calculated in parallel
+        List<File> uncheckedFiles = new ArrayList<>();
+        Map<String, RemoteFile> dbFiles = new HashMap<>();
+        for (RemoteFile remoteFile : files) {
+            File file = new File(Environment.getExternalStorageDirectory(), remoteFile.getPath());
+            if (!remoteFile.isRemove() && file.exists()) {
+                RemoteFile remoteFileDb = RemoteFileTable.selectByPath(DatabaseHelper.instance(context).getReadableDatabase(),
+                        remoteFile.getPath());
+                if (remoteFileDb != null) {
+                    dbFiles.put(remoteFile.getPath(), remoteFileDb);
+                } else {
+                    uncheckedFiles.add(file);
+                }
+            }
+        }
+        String[] checksums = CryptoUtils.calculateChecksums(uncheckedFiles);
+        Map<File, String> fileChecksums = new HashMap<>();
+        for (int i = 0; i < checksums.length; i++) {
+            fileChecksums.put(uncheckedFiles.get(i), checksums[i]);
+        }
+
         for (RemoteFile remoteFile : files) {
             File file = new File(Environment.getExternalStorageDirectory(), remoteFile.getPath());
             if (remoteFile.isRemove()) {
@@ -206,24 +237,18 @@ public class InstallUtils {
                 if (!file.exists()) {
                     filesForInstall.add(remoteFile);
                 } else {
-                    RemoteFile remoteFileDb = RemoteFileTable.selectByPath(DatabaseHelper.instance(context).getReadableDatabase(),
-                            remoteFile.getPath());
+                    RemoteFile remoteFileDb = dbFiles.get(remoteFile.getPath());
                     if (remoteFileDb != null) {
                         if (!remoteFileDb.getChecksum().equalsIgnoreCase(remoteFile.getChecksum())) {
                             filesForInstall.add(remoteFile);
                         }
                     } else {
                         // Entry not found in the database, let's check the checksum
-                        try {
-                            String checksum = CryptoUtils.calculateChecksum(new FileInputStream(file));
-                            if (checksum.equalsIgnoreCase(remoteFile.getChecksum())) {
-                                // File is correct, just save the entry in the database
-                                RemoteFileTable.insert(DatabaseHelper.instance(context).getWritableDatabase(), remoteFile);
-                            } else {
-                                filesForInstall.add(remoteFile);
-                            }
-                        } catch (FileNotFoundException e) {
-                            // We should never be here!
+                        String checksum = fileChecksums.get(file);
+                        if (checksum != null && checksum.equalsIgnoreCase(remoteFile.getChecksum())) {
+                            // File is correct, just save the entry in the database
+                            RemoteFileTable.insert(DatabaseHelper.instance(context).getWritableDatabase(), remoteFile);
+                        } else {
                             filesForInstall.add(remoteFile);
                         }
                     }
@@ -238,75 +263,30 @@ public class InstallUtils {
     }
 
     public static File downloadFile(Context context, String strUrl, DownloadProgress progressHandler ) throws Exception {
-        File tempFile = new File(context.getExternalFilesDir(null), getFileName(strUrl));
-        if (tempFile.exists()) {
-            tempFile.delete();
-        }
-
-        try {
-            try {
-                tempFile.createNewFile();
-            } catch (Exception e) {
-                e.printStackTrace();
-
-                tempFile = File.createTempFile(getFileName(strUrl), "temp");
-            }
-
-            URL url = new URL(strUrl);
-
-            HttpURLConnection connection;
-            if (BuildConfig.TRUST_ANY_CERTIFICATE && url.getProtocol().toLowerCase().equals("https")) {
-                connection = (HttpsURLConnection) url.openConnection();
-                ((HttpsURLConnection) connection).setHostnameVerifier(DO_NOT_VERIFY);
-            } else {
-                connection = (HttpURLConnection) url.openConnection();
-            }
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Accept-Encoding", "identity");
-            connection.setConnectTimeout((int) Const.CONNECTION_TIMEOUT);
-            connection.setReadTimeout((int) Const.CONNECTION_TIMEOUT);
-            if (BuildConfig.CHECK_SIGNATURE) {
-                String signature = getRequestSignature(strUrl);
-                if (signature != null) {
-                    connection.setRequestProperty("X-Request-Signature", signature);
-                }
-            }
-            connection.connect();
+        return downloadFile(context, strUrl, null, progressHandler);
+    }
 
-            if (connection.getResponseCode() != 200) {
-                throw new Exception("Bad server response for " + strUrl + ": " + connection.getResponseCode());
+    // The checksum (MD5) is verified if set
+    public static File downloadFile(Context context, String strUrl, String checksum, DownloadProgress progressHandler ) throws Exception {
+        // Files with the same name from different URLs may be downloaded in parallel
+        String name = Integer.toHexString(strUrl.hashCode()) + "-" + getFileName(strUrl).substring(1);
+        // Each call gets its own file, so a returned file is not replaced by another download of the same URL
+        File tempFile = new File(context.getExternalFilesDir(null), downloadCounter.incrementAndGet() + "-" + name);
+        synchronized (activeDownloads) {
+            // The downloads of the same URL share the partial file, so they are executed one by one
+            while (!activeDownloads.add(name)) {
+                activeDownloads.wait();
             }
-
-            int lengthOfFile = connection.getContentLength();
-
-            progressHandler.onDownloadProgress(0, lengthOfFile, 0);
-
-            InputStream is = connection.getInputStream();
-            DataInputStream dis = new DataInputStream(is);
-
-            byte[] buffer = new byte[1024];
-            int length;
-            long total = 0;
-
-            FileOutputStream fos = new FileOutputStream(tempFile);
-            while ((length = dis.read(buffer)) > 0) {
-                total += length;
-                progressHandler.onDownloadProgress(
-                        (int) ((total * 100.0f) / lengthOfFile),
-                        lengthOfFile,
-                        total);
-                fos.write(buffer, 0, length);
+        }
+        try {
+            // Resumes the previous attempt if it has been interrupted
+            return FileDownloader.download(context, strUrl, name, tempFile, checksum, progressHandler);
+        } finally {
+            synchronized (activeDownloads) {
+                activeDownloads.remove(name);
+                activeDownloads.notifyAll();
             }
-            fos.flush();
-            fos.close();
-
-            dis.close();
-        } catch (Exception e) {
-            tempFile.delete();
-            throw e;
         }
-
-        return tempFile;
     }
 
     public static String getRequestSignature(String strUrl) {
@@ -445,13 +425,6 @@ public class InstallUtils {
         return "UNKNOWN";
     }
 
-    // always verify the host - dont check for certificate
-    final static HostnameVerifier DO_NOT_VERIFY = new HostnameVerifier() {
-        public boolean verify(String hostname, SSLSession session) {
-            return true;
-        }
-    };
-
     /**
      * Trust every server - dont check for any certificate
      * This should be called at the app start if TRUST_ANY_CERTIFICATE is set to true
@@ -516,6 +489,11 @@ public class InstallUtils {
                     // These are names which should be kept here
                     continue;
                 }
+                if (child.getName().equals(FileDownloader.PARTIAL_DIR)) {
+                    // Partial downloads are resumed after restart
+                    FileDownloader.clearExpired(context);
+                    continue;
+                }
                 if (child.isDirectory()) {
                     deleteRecursive(child);
                 } else {
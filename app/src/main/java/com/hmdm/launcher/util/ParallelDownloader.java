@@ -0,0 +1,232 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.hmdm.launcher.Const;
+import com.hmdm.launcher.task.TaskLanes;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Downloads the files and apps of the configuration ahead, while the previous items are being installed.
+ * The items are still installed one by one in the configuration order: the installer calls get(),
+ * which returns the prefetched file or waits for its download.
+ * The number of parallel downloads, the number of downloads from one host,
+ * and the number of downloaded but not yet installed files are limited.
+ */
+public class ParallelDownloader {
+    public static final int DEFAULT_MAX_DOWNLOADS = 3;
+    public static final int MAX_DOWNLOADS_PER_HOST = 2;
+    // Prefetched files waiting for the installation, per download slot
+    private static final int LOOKAHEAD_FACTOR = 2;
+
+    private final int maxDownloads;
+    // Downloads by URL, removed when claimed by get()
+    private final Map<String, Download> downloads = new HashMap<>();
+    private final List<Download> pending = new LinkedList<>();
+    // Started and not yet finished downloads, including the claimed ones
+    private final List<Download> active = new LinkedList<>();
+    private final Map<String, Integer> hostDownloads = new HashMap<>();
+    private int running;
+    private boolean cancelled;
+
+    private static class Download implements InstallUtils.DownloadProgress {
+        final String url;
+        final String checksum;
+        final String host;
+        boolean started;
+        boolean done;
+        // Set when the file is passed to the installer
+        boolean claimed;
+        File file;
+        Exception error;
+        // Stops the download at the next portion of data
+        volatile boolean cancelled;
+        volatile InstallUtils.DownloadProgress listener;
+        volatile int progress;
+        volatile long total;
+        volatile long current;
+
+        Download(String url, String checksum) {
+            this.url = url;
+            this.checksum = checksum;
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            host = httpUrl != null ? httpUrl.host() : "";
+        }
+
+        @Override
+        public void onDownloadProgress(int progress, long total, long current) {
+            if (cancelled) {
+                // The partial file is kept, so the download may be resumed by the next update
+                throw new CancellationException("Download of " + url + " cancelled");
+            }
+            this.progress = progress;
+            this.total = total;
+            this.current = current;
+            InstallUtils.DownloadProgress listener = this.listener;
+            if (listener != null) {
+                listener.onDownloadProgress(progress, total, current);
+            }
+        }
+    }
+
+    public ParallelDownloader() {
+        this(DEFAULT_MAX_DOWNLOADS);
+    }
+
+    // Set maxDownloads to 1 to download only the item being installed
+    public ParallelDownloader(int maxDownloads) {
+        this.maxDownloads = Math.max(1, Math.min(maxDownloads, TaskLanes.DOWNLOAD_THREADS));
+    }
+
+    // Queues the download, the items should be queued in the installation order
+    public synchronized void prefetch(Context context, String url, String checksum) {
+        if (cancelled || maxDownloads == 1 || url == null || downloads.containsKey(url) ||
+                !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return;
+        }
+        Download download = new Download(url, checksum);
+        downloads.put(url, download);
+        pending.add(download);
+        startDownloads(context);
+    }
+
+    // Returns the downloaded file, same as InstallUtils.downloadFile(). Must be called in a background thread.
+    // If the download is not yet started, it is executed in the calling thread
+    public File get(Context context, String url, String checksum, InstallUtils.DownloadProgress progress) throws Exception {
+        Download download;
+        synchronized (this) {
+            download = downloads.remove(url);
+            if (download != null) {
+                download.claimed = true;
+            }
+            if (download == null || !download.started) {
+                if (download != null) {
+                    pending.remove(download);
+                } else {
+                    download = new Download(url, checksum);
+                    download.claimed = true;
+                }
+                onStart(download);
+            } else {
+                download.listener = progress;
+                if (!download.done) {
+                    progress.onDownloadProgress(download.progress, download.total, download.current);
+                }
+                while (!download.done) {
+                    wait();
+                }
+                // The prefetched file is claimed, so another download may start
+                startDownloads(context);
+                if (download.error != null) {
+                    throw download.error;
+                }
+                return download.file;
+            }
+        }
+        download.listener = progress;
+        run(context, download);
+        if (download.error != null) {
+            throw download.error;
+        }
+        return download.file;
+    }
+
+    // Stops the queued and running downloads and deletes the files which have not been claimed.
+    // Each download owns its file, so the files of other downloaders are not affected
+    public synchronized void cancel() {
+        cancelled = true;
+        pending.clear();
+        for (Download download : active) {
+            download.cancelled = true;
+        }
+        for (Download download : downloads.values()) {
+            if (download.done && download.file != null) {
+                download.file.delete();
+            }
+        }
+        downloads.clear();
+    }
+
+    private void startDownloads(final Context context) {
+        int prefetched = 0;
+        for (Download download : downloads.values()) {
+            if (download.started) {
+                prefetched++;
+            }
+        }
+        Iterator<Download> it = pending.iterator();
+        while (it.hasNext() && running < maxDownloads && prefetched < maxDownloads * LOOKAHEAD_FACTOR) {
+            final Download download = it.next();
+            Integer hostCount = hostDownloads.get(download.host);
+            if (hostCount != null && hostCount >= MAX_DOWNLOADS_PER_HOST) {
+                continue;
+            }
+            it.remove();
+            onStart(download);
+            prefetched++;
+            TaskLanes.DOWNLOAD.execute(() -> run(context, download));
+        }
+    }
+
+    private void onStart(Download download) {
+        download.started = true;
+        download.cancelled = cancelled;
+        active.add(download);
+        running++;
+        Integer hostCount = hostDownloads.get(download.host);
+        hostDownloads.put(download.host, hostCount != null ? hostCount + 1 : 1);
+    }
+
+    private void run(Context context, Download download) {
+        File file = null;
+        Exception error = null;
+        try {
+            Log.i(Const.LOG_TAG, "Downloading " + download.url);
+            file = InstallUtils.downloadFile(context, download.url, download.checksum, download);
+        } catch (Exception e) {
+            error = e;
+        }
+        synchronized (this) {
+            download.file = file;
+            download.error = error;
+            download.done = true;
+            active.remove(download);
+            running--;
+            hostDownloads.put(download.host, hostDownloads.get(download.host) - 1);
+            if (cancelled && file != null && !download.claimed) {
+                file.delete();
+            }
+            notifyAll();
+            startDownloads(context);
+        }
+    }
+}
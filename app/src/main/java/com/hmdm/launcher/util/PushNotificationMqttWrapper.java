@@ -37,6 +37,7 @@ import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
 import com.hmdm.launcher.Const;
+import com.hmdm.launcher.helper.ScheduleHelper;
 import com.hmdm.launcher.json.PushMessageJson;
 import com.hmdm.launcher.json.ServerConfig;
 import com.hmdm.launcher.worker.PushNotificationProcessor;
@@ -67,6 +68,8 @@ public class PushNotificationMqttWrapper {
 
     private static final String WORKER_TAG_MQTT_RECONNECT = "com.hmdm.launcher.WORK_TAG_MQTT_RECONNECT";
     private static final int MQTT_RECONNECT_INTERVAL_SEC = 900;
+    // Consecutive connection failures, to increase the reconnection delay
+    private int reconnectAttempts = 0;
 
     // If more than 20 connections per minute, we are stopping:
     // this is a sign that two devices with the same ID are registered
@@ -141,6 +144,7 @@ public class PushNotificationMqttWrapper {
                 if (reconnect || needProcessConnectExtended) {
                     RemoteLogger.log(context, Const.LOG_VERBOSE, "Reconnect complete");
                     if (checkConnectionLoop()) {
+                        reconnectAttempts = 0;
                         subscribe(context, deviceId, null, null);
                     } else {
                         RemoteLogger.log(context, Const.LOG_ERROR, "Reconnection loop detected! You have multiple devices with ID=" + deviceId + "! MQTT service stopped.");
@@ -155,6 +159,7 @@ public class PushNotificationMqttWrapper {
             client.connect(connectOptions, null, new IMqttActionListener() {
                 @Override
                 public void onSuccess(IMqttToken asyncActionToken) {
+                    reconnectAttempts = 0;
                     subscribe(context, deviceId, onSuccess, onFailure);
                 }
 
@@ -265,7 +270,9 @@ public class PushNotificationMqttWrapper {
 
     private void scheduleReconnectionAfterFailure(Context context, String host, int port,
                                                   String pushType, int keepaliveTime, final String deviceId) {
-        RemoteLogger.log(context, Const.LOG_INFO, "Scheduling MQTT reconnection in " + MQTT_RECONNECT_INTERVAL_SEC + " sec");
+        // Devices losing the connection at once should not reconnect at once
+        long delay = ScheduleHelper.getRetryDelay(context, MQTT_RECONNECT_INTERVAL_SEC * 1000L, reconnectAttempts++);
+        RemoteLogger.log(context, Const.LOG_INFO, "Scheduling MQTT reconnection in " + delay / 1000 + " sec");
         Data data = new Data.Builder()
                 .putString("host", host)
                 .putInt("port", port)
@@ -276,7 +283,7 @@ public class PushNotificationMqttWrapper {
         OneTimeWorkRequest queryRequest =
                 new OneTimeWorkRequest.Builder(PushNotificationMqttWrapper.ReconnectAfterFailureWorker.class)
                         .addTag(Const.WORK_TAG_COMMON)
-                        .setInitialDelay(MQTT_RECONNECT_INTERVAL_SEC, TimeUnit.SECONDS)
+                        .setInitialDelay(delay, TimeUnit.MILLISECONDS)
                         .setInputData(data)
                         .build();
         WorkManager.getInstance(context.getApplicationContext()).enqueueUniqueWork(WORKER_TAG_MQTT_RECONNECT,
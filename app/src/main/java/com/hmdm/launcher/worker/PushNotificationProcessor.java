@@ -29,9 +29,26 @@ import com.hmdm.launcher.util.RemoteLogger;
 
 import org.json.JSONObject;
 
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 public class PushNotificationProcessor {
+    public static void processAll(List<PushMessage> messages, Context context) {
+        Map<String, PushMessage> filteredMessages = new HashMap<String, PushMessage>();
+        for (PushMessage message : messages) {
+            // Filter out multiple configuration update requests
+            if (!message.getMessageType().equals(PushMessage.TYPE_CONFIG_UPDATED) ||
+                    !filteredMessages.containsKey(PushMessage.TYPE_CONFIG_UPDATED)) {
+                filteredMessages.put(message.getMessageType(), message);
+            }
+        }
+        for (Map.Entry<String, PushMessage> entry : filteredMessages.entrySet()) {
+            process(entry.getValue(), context);
+        }
+    }
+
     public static void process(PushMessage message, Context context) {
         RemoteLogger.log(context, Const.LOG_INFO, "Got Push Message, type " + message.getMessageType());
         if (message.getMessageType().equals(PushMessage.TYPE_CONFIG_UPDATED)) {
@@ -30,16 +30,14 @@ import androidx.work.WorkerParameters;
 
 import com.hmdm.launcher.Const;
 import com.hmdm.launcher.helper.ConfigUpdater;
+import com.hmdm.launcher.helper.ScheduleHelper;
 import com.hmdm.launcher.helper.SettingsHelper;
-import com.hmdm.launcher.json.PushMessage;
 import com.hmdm.launcher.json.PushResponse;
 import com.hmdm.launcher.json.ServerConfig;
 import com.hmdm.launcher.server.ServerService;
 import com.hmdm.launcher.server.ServerServiceKeeper;
 import com.hmdm.launcher.util.RemoteLogger;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import retrofit2.Response;
@@ -59,6 +57,9 @@ public class PushNotificationWorker extends Worker {
         PeriodicWorkRequest queryRequest =
                 new PeriodicWorkRequest.Builder(PushNotificationWorker.class, FIRE_PERIOD_MINS, TimeUnit.MINUTES)
                         .addTag(Const.WORK_TAG_COMMON)
+                        // Each device has its own phase, so the server is polled evenly
+                        .setInitialDelay(ScheduleHelper.getPhase(context, ScheduleHelper.JOB_PUSH,
+                                FIRE_PERIOD_MINS * 60000L), TimeUnit.MILLISECONDS)
                         .build();
         WorkManager.getInstance(context.getApplicationContext()).enqueueUniquePeriodicWork(WORK_TAG_PERIODIC, ExistingPeriodicWorkPolicy.REPLACE, queryRequest);
     }
@@ -99,6 +100,14 @@ public class PushNotificationWorker extends Worker {
 
     // Query server for incoming messages each 15 minutes
     private Result doPollingWork() {
+        if (SyncWorker.isSupported()) {
+            // Query push messages together with sending logs and device info
+            int result = SyncWorker.sync(context);
+            if (result != SyncWorker.RESULT_UNSUPPORTED) {
+                return result == SyncWorker.RESULT_SUCCESS ? Result.success() : Result.failure();
+            }
+        }
+
         ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
         ServerService secondaryServerService = ServerServiceKeeper.getSecondaryServerServiceInstance(context);
         Response<PushResponse> response = null;
@@ -120,17 +129,7 @@ public class PushNotificationWorker extends Worker {
 
             if ( response.isSuccessful() ) {
                 if ( Const.STATUS_OK.equals( response.body().getStatus() ) && response.body().getData() != null ) {
-                    Map<String, PushMessage> filteredMessages = new HashMap<String, PushMessage>();
-                    for (PushMessage message : response.body().getData()) {
-                        // Filter out multiple configuration update requests
-                        if (!message.getMessageType().equals(PushMessage.TYPE_CONFIG_UPDATED) ||
-                                !filteredMessages.containsKey(PushMessage.TYPE_CONFIG_UPDATED)) {
-                            filteredMessages.put(message.getMessageType(), message);
-                        }
-                    }
-                    for (Map.Entry<String, PushMessage> entry : filteredMessages.entrySet()) {
-                        PushNotificationProcessor.process(entry.getValue(), context);
-                    }
+                    PushNotificationProcessor.processAll(response.body().getData(), context);
                     return Result.success();
                 } else {
                     return Result.failure();
@@ -151,7 +150,8 @@ public class PushNotificationWorker extends Worker {
             settingsHelper.setConfigUpdateTimestamp(now);
             return Result.success();
         }
-        if (lastConfigUpdateTimestamp + CONFIG_UPDATE_INTERVAL > now) {
+        if (lastConfigUpdateTimestamp + ScheduleHelper.getInterval(context, ScheduleHelper.JOB_CONFIG_UPDATE,
+                CONFIG_UPDATE_INTERVAL) > now) {
             return Result.success();
         }
         RemoteLogger.log(context, Const.LOG_DEBUG, "Forcing configuration update");
@@ -32,6 +32,7 @@ import androidx.work.WorkerParameters;
 import com.hmdm.launcher.Const;
 import com.hmdm.launcher.db.DatabaseHelper;
 import com.hmdm.launcher.db.LogTable;
+import com.hmdm.launcher.helper.ScheduleHelper;
 import com.hmdm.launcher.helper.SettingsHelper;
 import com.hmdm.launcher.json.RemoteLogItem;
 import com.hmdm.launcher.server.ServerService;
@@ -57,6 +58,8 @@ public class RemoteLogWorker extends Worker {
     private static final String WORK_TAG_REMOTE_LOG = "com.hmdm.launcher.WORK_TAG_REMOTE_LOG";
 
     private static boolean uploadScheduled = false;
+    // Consecutive upload failures, to increase the retry delay
+    private static int failedAttempts = 0;
 
     private Context context;
     private SettingsHelper settingsHelper;
@@ -66,11 +69,20 @@ public class RemoteLogWorker extends Worker {
     }
 
     public static void scheduleUpload(Context context, int delayMins) {
+        scheduleUploadMs(context, delayMins * 60000L);
+    }
+
+    public static void scheduleUploadMs(Context context, long delayMs) {
+        if (SyncWorker.isSupported()) {
+            // Logs are sent together with the other data
+            SyncWorker.scheduleSyncMs(context, Math.max(delayMs, SyncWorker.COALESCE_PERIOD_MINS * 60000L));
+            return;
+        }
         Log.i(Const.LOG_TAG, "RemoteLogWorker scheduled");
         OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(RemoteLogWorker.class);
         builder.addTag(Const.WORK_TAG_COMMON);
-        if (delayMins > 0) {
-            builder.setInitialDelay(delayMins, TimeUnit.MINUTES);
+        if (delayMs > 0) {
+            builder.setInitialDelay(delayMs, TimeUnit.MILLISECONDS);
         }
         OneTimeWorkRequest uploadWorkRequest = builder.build();
         if (!uploadScheduled) {
@@ -98,14 +110,16 @@ public class RemoteLogWorker extends Worker {
                 Log.i(Const.LOG_TAG, "Remote logger: unsent items: " + unsentItems.size());
                 if (unsentItems.size() == 0) {
                     uploadScheduled = false;
+                    failedAttempts = 0;
                     return Result.success();
                 }
                 if (!upload(unsentItems)) {
                     // There was an error: retry!
                     // XXX: we do not use Result.retry() here because new logs may come
-                    Log.i(Const.LOG_TAG, "Failed to upload logs: retry in " + FIRE_PERIOD_RETRY_MINS + " mins");
+                    long delay = ScheduleHelper.getRetryDelay(context, FIRE_PERIOD_RETRY_MINS * 60000L, failedAttempts++);
+                    Log.i(Const.LOG_TAG, "Failed to upload logs: retry in " + delay / 1000 + " sec");
                     uploadScheduled = false;
-                    scheduleUpload(context, FIRE_PERIOD_RETRY_MINS);
+                    scheduleUploadMs(context, delay);
                     return Result.failure();
                 } else {
                     Log.i(Const.LOG_TAG, "Logs are uploaded");
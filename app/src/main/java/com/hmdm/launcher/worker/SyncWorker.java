@@ -0,0 +1,244 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.worker;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hmdm.launcher.Const;
+import com.hmdm.launcher.db.DatabaseHelper;
+import com.hmdm.launcher.db.LogTable;
+import com.hmdm.launcher.helper.JsonHelper;
+import com.hmdm.launcher.helper.ScheduleHelper;
+import com.hmdm.launcher.helper.SettingsHelper;
+import com.hmdm.launcher.json.DeviceInfo;
+import com.hmdm.launcher.json.RemoteLogItem;
+import com.hmdm.launcher.json.ServerConfig;
+import com.hmdm.launcher.json.SyncRequest;
+import com.hmdm.launcher.json.SyncResponse;
+import com.hmdm.launcher.server.ServerService;
+import com.hmdm.launcher.server.ServerServiceKeeper;
+import com.hmdm.launcher.util.DeviceInfoProvider;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Response;
+
+/**
+ * Sends pending logs, changed device info and queries push messages in one request,
+ * so the device wakes up the radio once instead of doing it for each job.
+ * Log uploads are coalesced by scheduling; periodic device info and push polling workers
+ * call sync() directly. If the server doesn't support the sync request,
+ * the separate requests are used.
+ */
+public class SyncWorker extends Worker {
+
+    public static final int RESULT_SUCCESS = 0;
+    public static final int RESULT_FAILED = 1;
+    public static final int RESULT_UNSUPPORTED = 2;
+
+    // Sync requests made within this period are sent at once
+    public static final int COALESCE_PERIOD_MINS = 1;
+
+    // Amount of log messages sent at once
+    private static final int MAX_SYNC_LOGS = 50;
+
+    // If the server doesn't support sync requests, check again after this period
+    private static final long UNSUPPORTED_PERIOD_MS = 24 * 3600000L;
+
+    private static final String WORK_TAG_SYNC = "com.hmdm.launcher.WORK_TAG_SYNC";
+
+    private static boolean syncScheduled = false;
+    // Consecutive sync failures, to increase the retry delay
+    private static int failedAttempts = 0;
+    private static final Object syncLock = new Object();
+    private static volatile long unsupportedUntil = 0;
+    // Device info sent by the last successful sync, to send only changed fields
+    private static ObjectNode lastDeviceInfo;
+
+    private Context context;
+
+    public static boolean isSupported() {
+        return System.currentTimeMillis() >= unsupportedUntil;
+    }
+
+    public static void scheduleSync(Context context, int delayMins) {
+        scheduleSyncMs(context, delayMins * 60000L);
+    }
+
+    public static synchronized void scheduleSyncMs(Context context, long delayMs) {
+        if (syncScheduled) {
+            return;
+        }
+        syncScheduled = true;
+        Log.i(Const.LOG_TAG, "SyncWorker scheduled in " + delayMs / 1000 + " sec");
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(SyncWorker.class);
+        builder.addTag(Const.WORK_TAG_COMMON);
+        if (delayMs > 0) {
+            builder.setInitialDelay(delayMs, TimeUnit.MILLISECONDS);
+        }
+        // Not appending: a chained request would be cancelled together with a failed sync.
+        // A running sync has already taken the logs, so replacing it doesn't lose anything
+        try {
+            WorkManager.getInstance(context).enqueueUniqueWork(WORK_TAG_SYNC, ExistingWorkPolicy.REPLACE, builder.build());
+        } catch (Exception e) {
+            // The sync will not run, so let the next call schedule it
+            syncScheduled = false;
+            e.printStackTrace();
+        }
+    }
+
+    public SyncWorker(
+            @NonNull Context context,
+            @NonNull WorkerParameters params) {
+        super(context, params);
+        this.context = context;
+    }
+
+    @Override
+    // This is running in a background thread by WorkManager
+    public Result doWork() {
+        synchronized (SyncWorker.class) {
+            syncScheduled = false;
+        }
+        switch (sync(context)) {
+            case RESULT_SUCCESS:
+                failedAttempts = 0;
+                return Result.success();
+            case RESULT_UNSUPPORTED:
+                // Send the logs by the separate request
+                RemoteLogWorker.scheduleUpload(context);
+                return Result.success();
+            default:
+                // Not using Result.retry() here because new logs may come.
+                // The retry is a separate work, so this work is finished successfully
+                scheduleSyncMs(context, ScheduleHelper.getRetryDelay(context,
+                        RemoteLogWorker.FIRE_PERIOD_RETRY_MINS * 60000L, failedAttempts++));
+                return Result.success();
+        }
+    }
+
+    // Must be called in a background thread
+    public static int sync(Context context) {
+        // Not locking the class: scheduleSync() is called from the main thread
+        synchronized (syncLock) {
+            return doSync(context);
+        }
+    }
+
+    private static int doSync(Context context) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        ServerConfig config = settingsHelper.getConfig();
+        if (config == null) {
+            return RESULT_FAILED;
+        }
+        if (!isSupported()) {
+            return RESULT_UNSUPPORTED;
+        }
+
+        DatabaseHelper dbHelper = DatabaseHelper.instance(context);
+        List<RemoteLogItem> logs = LogTable.select(dbHelper.getReadableDatabase(), MAX_SYNC_LOGS);
+
+        DeviceInfo deviceInfo = DeviceInfoProvider.getDeviceInfo(context, true, true);
+        ObjectNode deviceInfoNode = JsonHelper.getObjectMapper().valueToTree(deviceInfo);
+
+        SyncRequest request = new SyncRequest();
+        if (logs.size() > 0) {
+            request.setLogs(logs);
+        }
+        request.setDeviceInfo(getChangedFields(deviceInfoNode));
+        String pushOptions = config.getPushOptions();
+        request.setQueryPush(pushOptions == null || pushOptions.equals(ServerConfig.PUSH_OPTIONS_POLLING));
+
+        ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
+        ServerService secondaryServerService = ServerServiceKeeper.getSecondaryServerServiceInstance(context);
+        Response<SyncResponse> response = null;
+
+        try {
+            response = serverService.sync(settingsHelper.getServerProject(), settingsHelper.getDeviceId(), request).execute();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        try {
+            if (response == null) {
+                response = secondaryServerService.sync(settingsHelper.getServerProject(), settingsHelper.getDeviceId(), request).execute();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return RESULT_FAILED;
+        }
+
+        if (response.code() == 404 || response.code() == 405 || response.code() == 501) {
+            Log.w(Const.LOG_TAG, "Sync request is not supported by the server, using separate requests");
+            unsupportedUntil = System.currentTimeMillis() + UNSUPPORTED_PERIOD_MS;
+            return RESULT_UNSUPPORTED;
+        }
+        if (!response.isSuccessful() || response.body() == null || !Const.STATUS_OK.equals(response.body().getStatus())) {
+            return RESULT_FAILED;
+        }
+
+        settingsHelper.setExternalIp(response.headers().get(Const.HEADER_IP_ADDRESS));
+        if (logs.size() > 0) {
+            LogTable.delete(dbHelper.getWritableDatabase(), logs);
+            if (logs.size() == MAX_SYNC_LOGS) {
+                // There may be more logs
+                scheduleSync(context, 0);
+            }
+        }
+        lastDeviceInfo = deviceInfoNode;
+        if (response.body().getData() != null) {
+            PushNotificationProcessor.processAll(response.body().getData(), context);
+        }
+        return RESULT_SUCCESS;
+    }
+
+    // Returns null if nothing has changed since the last sync
+    private static JsonNode getChangedFields(ObjectNode deviceInfoNode) {
+        if (lastDeviceInfo == null) {
+            return deviceInfoNode;
+        }
+        ObjectNode changed = JsonHelper.getObjectMapper().createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = deviceInfoNode.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getValue().equals(lastDeviceInfo.get(field.getKey()))) {
+                changed.set(field.getKey(), field.getValue());
+            }
+        }
+        if (changed.size() == 0) {
+            return null;
+        }
+        changed.set("deviceId", deviceInfoNode.get("deviceId"));
+        return changed;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import com.hmdm.launcher.json.Application;
+import com.hmdm.launcher.json.ServerConfig;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigDiffTest {
+
+    private static ServerConfig createConfig() {
+        ServerConfig config = new ServerConfig();
+        config.setPushOptions("mqttWorker");
+        config.setKeepaliveTime(300);
+        Application application = new Application();
+        application.setPkg("com.example.app");
+        application.setVersion("1.0");
+        config.setApplications(Arrays.asList(application));
+        return config;
+    }
+
+    @Test
+    public void missingConfigIsFull() {
+        assertTrue(ConfigDiff.compare(null, createConfig()).isFull());
+        assertTrue(ConfigDiff.compare(createConfig(), null).isFull());
+        assertTrue(ConfigDiff.full().isChanged(ConfigDiff.FILES));
+        assertFalse(ConfigDiff.full().isUnchanged());
+    }
+
+    @Test
+    public void sameConfigIsUnchanged() {
+        ConfigDiff diff = ConfigDiff.compare(createConfig(), createConfig());
+        assertFalse(diff.isFull());
+        assertTrue(diff.isUnchanged());
+        assertFalse(diff.isChanged(ConfigDiff.APPLICATIONS, ConfigDiff.PUSH_OPTIONS, ConfigDiff.NEW_SERVER_URL));
+        assertTrue(ConfigDiff.unchanged().isUnchanged());
+    }
+
+    @Test
+    public void changedPropertiesAreListed() {
+        ServerConfig newConfig = createConfig();
+        newConfig.setKeepaliveTime(600);
+        newConfig.setNewServerUrl("https://new.example.com");
+        newConfig.getApplications().get(0).setVersion("1.1");
+
+        ConfigDiff diff = ConfigDiff.compare(createConfig(), newConfig);
+        assertEquals(new HashSet<>(Arrays.asList(ConfigDiff.KEEPALIVE_TIME, ConfigDiff.NEW_SERVER_URL, ConfigDiff.APPLICATIONS)),
+                diff.getChangedProperties());
+        assertTrue(diff.isChanged(ConfigDiff.PUSH_OPTIONS, ConfigDiff.KEEPALIVE_TIME));
+        assertFalse(diff.isChanged(ConfigDiff.PUSH_OPTIONS, ConfigDiff.FILES, ConfigDiff.ACTIONS));
+        assertFalse(diff.isUnchanged());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hmdm.launcher.json.Application;
+import com.hmdm.launcher.json.RemoteFile;
+import com.hmdm.launcher.json.ServerConfig;
+import com.hmdm.launcher.json.ServerConfigPatch;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConfigPatchTest {
+
+    private static Application application(String pkg, String version) {
+        Application application = new Application();
+        application.setPkg(pkg);
+        application.setVersion(version);
+        return application;
+    }
+
+    private static RemoteFile file(String path, String checksum) {
+        RemoteFile file = new RemoteFile();
+        file.setPath(path);
+        file.setChecksum(checksum);
+        return file;
+    }
+
+    private static ServerConfig createConfig() {
+        ServerConfig config = new ServerConfig();
+        config.setRevision(5L);
+        config.setTitle("Old title");
+        config.setKeepaliveTime(300);
+        config.setApplications(new LinkedList<>(Arrays.asList(
+                application("com.example.a", "1.0"),
+                application("com.example.b", "1.0"),
+                application("com.example.c", "1.0"))));
+        config.setFiles(new LinkedList<>(Arrays.asList(file("a.txt", "aaa"), file("b.txt", "bbb"))));
+        return config;
+    }
+
+    private static ServerConfigPatch createPatch(long baseRevision) {
+        ServerConfigPatch patch = new ServerConfigPatch();
+        patch.setBaseRevision(baseRevision);
+        patch.setRevision(6L);
+        return patch;
+    }
+
+    private static List<String> getApplicationKeys(ServerConfig config) {
+        List<String> keys = new LinkedList<>();
+        for (Application application : config.getApplications()) {
+            keys.add(ServerConfigPatch.getApplicationKey(application));
+        }
+        return keys;
+    }
+
+    @Test
+    public void patchIsAppliedToCopy() {
+        ServerConfig config = createConfig();
+        ServerConfigPatch patch = createPatch(5);
+        ObjectNode fields = JsonHelper.getObjectMapper().createObjectNode();
+        fields.put("title", "New title");
+        patch.setFields(fields);
+        patch.setApplications(Arrays.asList(application("com.example.d", "1.0")));
+        patch.setRemovedApplications(Arrays.asList("com.example.b@1.0"));
+        patch.setFiles(Arrays.asList(file("a.txt", "ccc")));
+        patch.setRemovedFiles(Arrays.asList("b.txt"));
+
+        ServerConfig patched = SettingsHelper.applyConfigPatch(config, patch);
+        assertEquals(Long.valueOf(6), patched.getRevision());
+        assertEquals("New title", patched.getTitle());
+        assertEquals(Integer.valueOf(300), patched.getKeepaliveTime());
+        assertEquals(Arrays.asList("com.example.a@1.0", "com.example.c@1.0", "com.example.d@1.0"), getApplicationKeys(patched));
+        assertEquals(1, patched.getFiles().size());
+        assertEquals("ccc", patched.getFiles().get(0).getChecksum());
+
+        // The original configuration stays unchanged
+        assertEquals(Long.valueOf(5), config.getRevision());
+        assertEquals("Old title", config.getTitle());
+        assertEquals(3, config.getApplications().size());
+        assertEquals("aaa", config.getFiles().get(0).getChecksum());
+    }
+
+    @Test
+    public void changedItemKeepsPosition() {
+        ServerConfigPatch patch = createPatch(5);
+        RemoteFile changed = file("a.txt", "ccc");
+        patch.setFiles(Arrays.asList(changed));
+        ServerConfig patched = SettingsHelper.applyConfigPatch(createConfig(), patch);
+        assertEquals("a.txt", patched.getFiles().get(0).getPath());
+        assertEquals("ccc", patched.getFiles().get(0).getChecksum());
+        assertEquals("b.txt", patched.getFiles().get(1).getPath());
+    }
+
+    @Test
+    public void revisionMismatchRequiresFullConfig() {
+        assertNull(SettingsHelper.applyConfigPatch(createConfig(), createPatch(4)));
+        assertNull(SettingsHelper.applyConfigPatch(null, createPatch(5)));
+        ServerConfig config = createConfig();
+        config.setRevision(null);
+        assertNull(SettingsHelper.applyConfigPatch(config, createPatch(5)));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduleHelperTest {
+
+    private static final long WINDOW = 15 * 60000;
+
+    @Test
+    public void slotIsStableAndInWindow() {
+        for (int i = 0; i < 1000; i++) {
+            long slot = ScheduleHelper.getSlot("device" + i, ScheduleHelper.JOB_PUSH, WINDOW);
+            assertTrue(slot >= 0 && slot < WINDOW);
+            assertEquals(slot, ScheduleHelper.getSlot("device" + i, ScheduleHelper.JOB_PUSH, WINDOW));
+        }
+        assertEquals(0, ScheduleHelper.getSlot("device", ScheduleHelper.JOB_PUSH, 0));
+    }
+
+    @Test
+    public void slotsAreSpreadOverWindow() {
+        int buckets = 10;
+        int devices = 20000;
+        int[] counts = new int[buckets];
+        for (int i = 0; i < devices; i++) {
+            counts[(int) (ScheduleHelper.getSlot("device" + i, ScheduleHelper.JOB_CONFIG_UPDATE, WINDOW) * buckets / WINDOW)]++;
+        }
+        for (int count : counts) {
+            assertEquals(devices / buckets, count, devices / buckets / 5);
+        }
+    }
+
+    @Test
+    public void jobsHaveOwnSlots() {
+        int same = 0;
+        for (int i = 0; i < 100; i++) {
+            if (ScheduleHelper.getSlot("device" + i, ScheduleHelper.JOB_PUSH, WINDOW) ==
+                    ScheduleHelper.getSlot("device" + i, ScheduleHelper.JOB_DEVICE_INFO, WINDOW)) {
+                same++;
+            }
+        }
+        assertTrue(same < 5);
+    }
+}
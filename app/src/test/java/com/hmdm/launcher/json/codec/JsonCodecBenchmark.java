@@ -0,0 +1,112 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdm.launcher.json.Action;
+import com.hmdm.launcher.json.Application;
+import com.hmdm.launcher.json.ApplicationSetting;
+import com.hmdm.launcher.json.RemoteFile;
+import com.hmdm.launcher.json.ServerConfig;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the time and the allocated memory of reading and writing a configuration
+ * by the Jackson bean (de)serializers and by the codecs of JsonCodecModule.
+ * Not a unit test because of its duration, run it from the test classpath:
+ * java com.hmdm.launcher.json.codec.JsonCodecBenchmark [applications] [iterations]
+ * Run it also with -Xint as a rough proxy for the interpreted code on low-end devices.
+ */
+public class JsonCodecBenchmark {
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int applications = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        ServerConfig config = createConfig(applications);
+        ObjectMapper beanMapper = new ObjectMapper();
+        ObjectMapper codecMapper = new ObjectMapper().registerModule(new JsonCodecModule());
+        final String json = beanMapper.writeValueAsString(config);
+        if (!beanMapper.readTree(json).equals(beanMapper.readTree(codecMapper.writeValueAsString(config)))) {
+            throw new AssertionError("Codecs write different JSON");
+        }
+        System.out.println(applications + " applications, " + json.length() / 1024 + " KB of JSON, " +
+                iterations + " iterations");
+
+        run("read, beans", iterations, () -> beanMapper.readValue(json, ServerConfig.class));
+        run("read, codecs", iterations, () -> codecMapper.readValue(json, ServerConfig.class));
+        run("write, beans", iterations, () -> beanMapper.writeValueAsString(config));
+        run("write, codecs", iterations, () -> codecMapper.writeValueAsString(config));
+    }
+
+    // Same amounts of the repeated models as in a large real configuration
+    private static ServerConfig createConfig(int applications) throws Exception {
+        List<Application> apps = new ArrayList<>();
+        List<ApplicationSetting> settings = new ArrayList<>();
+        List<RemoteFile> files = new ArrayList<>();
+        List<Action> actions = new ArrayList<>();
+        for (int i = 0; i < applications; i++) {
+            Application app = JsonCodecTest.createPopulated(Application.class);
+            app.setPkg("com.example.app" + i);
+            apps.add(app);
+            if (i % 4 == 0) {
+                settings.add(JsonCodecTest.createPopulated(ApplicationSetting.class));
+                files.add(JsonCodecTest.createPopulated(RemoteFile.class));
+            }
+            if (i % 20 == 0) {
+                actions.add(JsonCodecTest.createPopulated(Action.class));
+            }
+        }
+        ServerConfig config = new ServerConfig();
+        config.setApplications(apps);
+        config.setApplicationSettings(settings);
+        config.setFiles(files);
+        config.setActions(actions);
+        return config;
+    }
+
+    // Prints the median time and the bytes allocated per operation after a warm-up
+    private static void run(String name, int iterations, Operation operation) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] times = new long[iterations];
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            times[i] = System.nanoTime() - start;
+        }
+        long allocated = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / iterations;
+        Arrays.sort(times);
+        System.out.println(name + ": median " + times[iterations / 2] / 1000 + " us, " +
+                allocated / 1024 + " KB allocated");
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.json.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks the hand-written codecs against the Jackson bean (de)serializers of their models.
+ * Fails when a model gains a property which is missing in its codec.
+ */
+public class JsonCodecTest {
+
+    private final ObjectMapper beanMapper = new ObjectMapper();
+
+    @Test
+    public void codecsAreRegistered() {
+        assertFalse(new JsonCodecModule().getCodecs().isEmpty());
+    }
+
+    @Test
+    public void codecPropertiesMatchBeanProperties() throws Exception {
+        for (JsonCodec<?> codec : new JsonCodecModule().getCodecs()) {
+            JsonNode beanTree = beanMapper.valueToTree(createPopulated(codec.getType()));
+            Set<String> beanProperties = new HashSet<>();
+            Iterator<String> names = beanTree.fieldNames();
+            while (names.hasNext()) {
+                beanProperties.add(names.next());
+            }
+            assertEquals(codec.getType().getSimpleName(), beanProperties, codec.getPropertyNames());
+        }
+    }
+
+    @Test
+    public void codecWritesSameJsonAsBeanSerializer() throws Exception {
+        for (JsonCodec<?> codec : new JsonCodecModule().getCodecs()) {
+            ObjectMapper codecMapper = createCodecMapper(codec);
+            Object value = createPopulated(codec.getType());
+            assertEquals(codec.getType().getSimpleName(),
+                    beanMapper.readTree(beanMapper.writeValueAsString(value)),
+                    beanMapper.readTree(codecMapper.writeValueAsString(value)));
+        }
+    }
+
+    @Test
+    public void codecReadsSameValuesAsBeanDeserializer() throws Exception {
+        for (JsonCodec<?> codec : new JsonCodecModule().getCodecs()) {
+            ObjectMapper codecMapper = createCodecMapper(codec);
+            String json = beanMapper.writeValueAsString(createPopulated(codec.getType()));
+            Object codecValue = codecMapper.readValue(json, codec.getType());
+            Object beanValue = beanMapper.readValue(json, codec.getType());
+            assertEquals(codec.getType().getSimpleName(),
+                    beanMapper.valueToTree(beanValue), beanMapper.valueToTree(codecValue));
+        }
+    }
+
+    @Test
+    public void registeredModuleRoundTrips() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JsonCodecModule());
+        for (JsonCodec<?> codec : new JsonCodecModule().getCodecs()) {
+            Object value = createPopulated(codec.getType());
+            Object copy = mapper.readValue(mapper.writeValueAsString(value), codec.getType());
+            assertEquals(codec.getType().getSimpleName(),
+                    beanMapper.valueToTree(value), beanMapper.valueToTree(copy));
+        }
+    }
+
+    // Uses only the codec, without falling back to the bean deserializer for unknown properties
+    private static <T> ObjectMapper createCodecMapper(JsonCodec<T> codec) {
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(codec.getType(), new CodecSerializer<>(codec));
+        module.addDeserializer(codec.getType(), new CodecDeserializer<>(codec, null));
+        return new ObjectMapper().registerModule(module);
+    }
+
+    // Sets each property to a distinct non-default value
+    static <T> T createPopulated(Class<T> type) throws Exception {
+        T value = type.newInstance();
+        int counter = 1;
+        for (Method method : type.getMethods()) {
+            if (!method.getName().startsWith("set") || method.getParameterTypes().length != 1) {
+                continue;
+            }
+            Class<?> paramType = method.getParameterTypes()[0];
+            if (paramType == String.class) {
+                method.invoke(value, method.getName().substring(3) + "-" + counter);
+            } else if (paramType == boolean.class || paramType == Boolean.class) {
+                method.invoke(value, true);
+            } else if (paramType == int.class || paramType == Integer.class) {
+                method.invoke(value, counter);
+            } else if (paramType == long.class || paramType == Long.class) {
+                method.invoke(value, 10000000000L + counter);
+            } else {
+                throw new IllegalStateException("Unsupported property type " + paramType.getSimpleName() +
+                        " in " + type.getSimpleName() + "." + method.getName());
+            }
+            counter++;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.server;
+
+import com.hmdm.launcher.json.ServerEndpoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HashRingTest {
+
+    private static final int DEVICES = 20000;
+    // With 100 ring points per weight unit, a node share deviates from its weight by about 10%
+    private static final double SHARE_TOLERANCE = 0.2;
+
+    private static ServerEndpoint endpoint(String url, Integer weight) {
+        ServerEndpoint endpoint = new ServerEndpoint();
+        endpoint.setUrl(url);
+        endpoint.setWeight(weight);
+        return endpoint;
+    }
+
+    private static List<ServerEndpoint> endpoints(ServerEndpoint... endpoints) {
+        return new ArrayList<>(Arrays.asList(endpoints));
+    }
+
+    private static Map<String, Integer> countHomeNodes(HashRing ring) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < DEVICES; i++) {
+            String node = ring.getNodes("device" + i).get(0);
+            Integer count = counts.get(node);
+            counts.put(node, count != null ? count + 1 : 1);
+        }
+        return counts;
+    }
+
+    @Test
+    public void sharesFollowWeights() {
+        HashRing ring = new HashRing(endpoints(
+                endpoint("https://a.example.com", 1),
+                endpoint("https://b.example.com", null),
+                endpoint("https://c.example.com", 2)));
+        Map<String, Integer> counts = countHomeNodes(ring);
+        assertEquals(0.25, counts.get("https://a.example.com") / (double) DEVICES, 0.25 * SHARE_TOLERANCE);
+        assertEquals(0.25, counts.get("https://b.example.com") / (double) DEVICES, 0.25 * SHARE_TOLERANCE);
+        assertEquals(0.5, counts.get("https://c.example.com") / (double) DEVICES, 0.5 * SHARE_TOLERANCE);
+    }
+
+    @Test
+    public void addingNodeMovesDevicesOnlyToIt() {
+        List<ServerEndpoint> endpoints = endpoints(
+                endpoint("https://a.example.com", 1),
+                endpoint("https://b.example.com", 1),
+                endpoint("https://c.example.com", 1));
+        HashRing ring = new HashRing(endpoints);
+        endpoints.add(endpoint("https://d.example.com", 1));
+        HashRing newRing = new HashRing(endpoints);
+
+        int moved = 0;
+        for (int i = 0; i < DEVICES; i++) {
+            String node = ring.getNodes("device" + i).get(0);
+            String newNode = newRing.getNodes("device" + i).get(0);
+            if (!newNode.equals(node)) {
+                assertEquals("https://d.example.com", newNode);
+                moved++;
+            }
+        }
+        // The new node gets its share, about a quarter of the devices
+        assertEquals(0.25, moved / (double) DEVICES, 0.25 * SHARE_TOLERANCE);
+    }
+
+    @Test
+    public void failoverFollowsRing() {
+        List<ServerEndpoint> endpoints = endpoints(
+                endpoint("https://a.example.com", 1),
+                endpoint("https://b.example.com", 2),
+                endpoint("https://c.example.com", 1),
+                endpoint("https://d.example.com", 1));
+        HashRing ring = new HashRing(endpoints);
+        for (int i = 0; i < 100; i++) {
+            List<String> nodes = ring.getNodes("device" + i);
+            assertEquals(4, nodes.size());
+            assertEquals(nodes, ring.getNodes("device" + i));
+
+            // Without its home node, the device goes to the next node of its failover list
+            List<ServerEndpoint> remaining = new ArrayList<>();
+            for (ServerEndpoint endpoint : endpoints) {
+                if (!endpoint.getUrl().equals(nodes.get(0))) {
+                    remaining.add(endpoint);
+                }
+            }
+            assertEquals(nodes.subList(1, nodes.size()), new HashRing(remaining).getNodes("device" + i));
+        }
+    }
+
+    @Test
+    public void invalidEndpointsAreSkipped() {
+        HashRing ring = new HashRing(endpoints(
+                endpoint(null, 1),
+                endpoint("not a url", 1),
+                endpoint("https://a.example.com", 0)));
+        assertTrue(ring.isEmpty());
+
+        ring = new HashRing(endpoints(endpoint("not a url", 1), endpoint("https://a.example.com", 1)));
+        assertEquals(Arrays.asList("https://a.example.com"), ring.getNodes("device"));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the checksum calculation with the previous implementation (CryptoUtilsTest.legacyChecksum).
+ * Not a unit test because of its duration, run it from the test classpath:
+ * java com.hmdm.launcher.util.CryptoUtilsBenchmark [files] [file size in MB] [iterations]
+ * The files are read from the page cache after the warm-up, so this measures the CPU cost of hashing.
+ */
+public class CryptoUtilsBenchmark {
+
+    private interface Hasher {
+        String[] hash(List<File> files) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int sizeMb = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        List<File> files = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads - 1));
+        try {
+            Random random = new Random(0);
+            byte[] data = new byte[sizeMb * 1024 * 1024];
+            for (int i = 0; i < fileCount; i++) {
+                random.nextBytes(data);
+                File file = File.createTempFile("benchmark", ".bin");
+                try (FileOutputStream os = new FileOutputStream(file)) {
+                    os.write(data);
+                }
+                files.add(file);
+            }
+            System.out.println(fileCount + " files of " + sizeMb + " MB, " + threads + " cores");
+
+            String[] legacy = run("legacy", iterations, files, list -> {
+                String[] checksums = new String[list.size()];
+                for (int i = 0; i < list.size(); i++) {
+                    checksums[i] = CryptoUtilsTest.legacyChecksum(new FileInputStream(list.get(i)));
+                }
+                return checksums;
+            });
+            String[] sequential = run("sequential", iterations, files, list -> {
+                String[] checksums = new String[list.size()];
+                for (int i = 0; i < list.size(); i++) {
+                    checksums[i] = CryptoUtils.calculateChecksum(list.get(i));
+                }
+                return checksums;
+            });
+            String[] parallel = run("parallel", iterations, files,
+                    list -> CryptoUtils.calculateChecksums(list, executor, threads));
+
+            if (!Arrays.equals(legacy, sequential) || !Arrays.equals(legacy, parallel)) {
+                throw new AssertionError("Checksums differ: " + Arrays.toString(legacy) + ", " +
+                        Arrays.toString(sequential) + ", " + Arrays.toString(parallel));
+            }
+        } finally {
+            executor.shutdown();
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    // Prints the best and the median time of the iterations after one warm-up run
+    private static String[] run(String name, int iterations, List<File> files, Hasher hasher) throws Exception {
+        String[] result = hasher.hash(files);
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            hasher.hash(files);
+            times[i] = (System.nanoTime() - start) / 1000000;
+        }
+        Arrays.sort(times);
+        System.out.println(name + ": best " + times[0] + " ms, median " + times[iterations / 2] + " ms");
+        return result;
+    }
+}
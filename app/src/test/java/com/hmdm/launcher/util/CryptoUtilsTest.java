@@ -0,0 +1,191 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.util;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the checksums with the previous implementation: a byte-by-byte DigestInputStream
+ * and the hex string built by BigInteger and padded by zeros.
+ */
+public class CryptoUtilsTest {
+
+    // Threads used by the parallel checksum calculation, more than the cores of a single-core machine
+    private static final int THREADS = 4;
+
+    // Sizes around the read buffer of CryptoUtils
+    private static final int[] SIZES = {0, 1, 4095, 65536, 256 * 1024 - 1, 256 * 1024, 256 * 1024 + 1, 1000000};
+
+    private static String legacyChecksum(byte[] data) throws Exception {
+        return legacyChecksum(new ByteArrayInputStream(data));
+    }
+
+    // The previous implementation of CryptoUtils.calculateChecksum(), also used by CryptoUtilsBenchmark
+    static String legacyChecksum(InputStream fileContent) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        try (DigestInputStream dis = new DigestInputStream(new BufferedInputStream(fileContent), md)) {
+            while (dis.read() != -1) {
+            }
+        }
+        String hashtext = new BigInteger(1, md.digest()).toString(16);
+        while (hashtext.length() < 32) {
+            hashtext = "0" + hashtext;
+        }
+        return hashtext;
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static File createFile(byte[] data) throws Exception {
+        File file = File.createTempFile("checksum", ".bin");
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+        return file;
+    }
+
+    // Data whose MD5 digest starts with a zero byte, so BigInteger drops the leading zeros
+    private static byte[] leadingZeroData() throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        for (int i = 0; ; i++) {
+            byte[] data = ("data" + i).getBytes("UTF-8");
+            if (md.digest(data)[0] == 0) {
+                return data;
+            }
+        }
+    }
+
+    @Test
+    public void streamChecksumMatchesLegacy() throws Exception {
+        for (int size : SIZES) {
+            byte[] data = randomData(size, size);
+            InputStream is = new ByteArrayInputStream(data);
+            assertEquals("size " + size, legacyChecksum(data), CryptoUtils.calculateChecksum(is));
+        }
+    }
+
+    @Test
+    public void fileChecksumMatchesLegacy() throws Exception {
+        for (int size : SIZES) {
+            byte[] data = randomData(size, size);
+            File file = createFile(data);
+            try {
+                assertEquals("size " + size, legacyChecksum(data), CryptoUtils.calculateChecksum(file));
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void leadingZerosAreKept() throws Exception {
+        byte[] data = leadingZeroData();
+        String checksum = CryptoUtils.calculateChecksum(new ByteArrayInputStream(data));
+        assertEquals(32, checksum.length());
+        assertTrue(checksum, checksum.startsWith("00"));
+        assertEquals(legacyChecksum(data), checksum);
+
+        File file = createFile(data);
+        try {
+            assertEquals(legacyChecksum(data), CryptoUtils.calculateChecksum(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void hexStringMatchesBigInteger() {
+        byte[][] digests = {
+                new byte[16],
+                {0, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14},
+                {0x0f, -1, -128, 127, 0, 1, -16, 16, 0, 0, 0, 0, 0, 0, 0, 1},
+                randomData(16, 1)
+        };
+        for (byte[] digest : digests) {
+            String expected = String.format("%32s", new BigInteger(1, digest).toString(16)).replace(' ', '0');
+            assertEquals(Arrays.toString(digest), expected, CryptoUtils.toHexString(digest));
+        }
+    }
+
+    @Test
+    public void parallelChecksumsAreInFileOrder() throws Exception {
+        List<File> files = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                byte[] data = randomData(100000 + i * 1000, i);
+                files.add(createFile(data));
+                expected.add(legacyChecksum(data));
+            }
+            // An unreadable file gets a null checksum and doesn't stop the others
+            files.add(5, new File(files.get(0).getParentFile(), "missing-" + System.nanoTime()));
+            expected.add(5, null);
+
+            String[] checksums = calculateChecksums(files);
+            assertEquals(expected, Arrays.asList(checksums));
+        } finally {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void failedChecksumDoesNotBlock() {
+        // A null file fails with an exception in the worker, the call must still return
+        List<File> files = Arrays.asList(null, null, null);
+        String[] checksums = calculateChecksums(files);
+        assertEquals(3, checksums.length);
+        assertNull(checksums[0]);
+    }
+
+    // The task lanes use Android classes which are not available in the unit tests, so a plain executor is used
+    private static String[] calculateChecksums(List<File> files) {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS - 1);
+        try {
+            return CryptoUtils.calculateChecksums(files, executor, THREADS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
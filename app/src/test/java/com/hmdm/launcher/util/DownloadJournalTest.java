@@ -0,0 +1,88 @@
+/*
+ * Headwind MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmdm.launcher.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DownloadJournalTest {
+
+    @Test
+    public void journalIsSavedAndLoaded() throws Exception {
+        File file = File.createTempFile("journal", ".json");
+        try {
+            DownloadJournal journal = new DownloadJournal();
+            journal.setUrl("https://example.com/files/app.apk");
+            journal.setValidator("\"etag\"");
+            journal.setTotal(10000000);
+            journal.setDone(3000000);
+            journal.setChunkSize(2000000);
+            journal.setChunks(new boolean[] {true, false, true, false, false});
+            journal.save(file);
+
+            DownloadJournal loaded = DownloadJournal.load(file);
+            assertEquals(journal.getUrl(), loaded.getUrl());
+            assertEquals(journal.getValidator(), loaded.getValidator());
+            assertEquals(journal.getTotal(), loaded.getTotal());
+            assertEquals(journal.getDone(), loaded.getDone());
+            assertEquals(journal.getChunkSize(), loaded.getChunkSize());
+            assertArrayEquals(journal.getChunks(), loaded.getChunks());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void sequentialJournalHasNoChunks() throws Exception {
+        File file = File.createTempFile("journal", ".json");
+        try {
+            DownloadJournal journal = new DownloadJournal();
+            journal.setUrl("https://example.com/files/app.apk");
+            journal.save(file);
+            DownloadJournal loaded = DownloadJournal.load(file);
+            assertEquals(-1, loaded.getTotal());
+            assertNull(loaded.getChunks());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void missingOrBrokenJournalIsIgnored() throws Exception {
+        File file = File.createTempFile("journal", ".json");
+        file.delete();
+        assertNull(DownloadJournal.load(file));
+
+        FileWriter writer = new FileWriter(file);
+        writer.write("{\"url\": \"https://example.com/files/app.apk\", \"done\": ");
+        writer.close();
+        try {
+            assertNull(DownloadJournal.load(file));
+        } finally {
+            file.delete();
+        }
+    }
+}